@@ -0,0 +1,27 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Runs the JMH benchmarks, as org.openjdk.jmh.Main does, but writes the
+ *  results as JSON to jmh-result.json unless the arguments choose another
+ *  result format or file, so runs at different commits can be compared.
+ *
+ *      java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]
+ *
+ *  @LiZhu
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmh = new ArrayList<>(Arrays.asList(args));
+        if (!jmh.contains("-rf")) {
+            jmh.addAll(0, List.of("-rf", "json"));
+        }
+        if (!jmh.contains("-rff")) {
+            jmh.addAll(0, List.of("-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(jmh.toArray(new String[0]));
+    }
+}
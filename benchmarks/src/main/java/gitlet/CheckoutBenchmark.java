@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Checking out files, as reset and checkout of a branch do: the working
+ *  directory moves between the first and the last commit of a history of
+ *  DEPTH commits, in alternating directions, so every invocation rewrites
+ *  the files those commits changed.
+ *
+ *  @LiZhu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckoutBenchmark {
+
+    @Param({"1000", "10000"})
+    public int files;
+
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    @Param({"2", "20"})
+    public int depth;
+
+    private Commit first;
+    private Commit last;
+    private boolean atLast = true;
+
+    @Setup
+    public void setup() {
+        SyntheticRepo repo = SyntheticRepo.create(files, fileSize, depth);
+        CommitGraph graph = CommitGraph.get();
+        int row = graph.row(repo.head());
+        last = ObjectStore.readObject(ObjectStore.COMMIT, graph.id(row), Commit.class);
+        for (int i = 1; i < depth; i++) {
+            row = graph.parent(row);
+        }
+        first = ObjectStore.readObject(ObjectStore.COMMIT, graph.id(row), Commit.class);
+    }
+
+    @Benchmark
+    public int checkoutFiles() {
+        int n = Checkout.apply(atLast ? Checkout.changes(last, first) : Checkout.changes(first, last));
+        atLast = !atLast;
+        return n;
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Object encoding and decoding: commits and trees through ObjectCodec,
+ *  commits through the Java serialization of Utils that older
+ *  repositories used, and blob contents through each compression codec.
+ *  The root tree of the synthetic repository has one entry per hundred
+ *  files.
+ *
+ *  @LiZhu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    @Param({"1000", "20000"})
+    public int files;
+
+    @Param({"4096"})
+    public int fileSize;
+
+    @Param({"deflate", "lz"})
+    public String codec;
+
+    private Commit commit;
+    private byte[] commitBytes;
+    private byte[] commitSerialized;
+    private Tree tree;
+    private byte[] treeBytes;
+    private byte[] blob;
+    private byte[] blobCompressed;
+
+    @Setup
+    public void setup() {
+        SyntheticRepo repo = SyntheticRepo.create(files, fileSize, 2);
+        commit = ObjectStore.readObject(ObjectStore.COMMIT, repo.head(), Commit.class);
+        commitBytes = ObjectCodec.encode(commit);
+        commitSerialized = Utils.serialize(commit);
+        tree = Tree.read(commit.getTreeID());
+        treeBytes = ObjectCodec.encode(tree);
+        blob = Blob.read(commit.getFileMap().get(SyntheticRepo.path(0)));
+        System.setProperty("gitlet.compression", codec);
+        blobCompressed = Compression.encode(blob);
+    }
+
+    @Benchmark
+    public byte[] encodeCommit() {
+        return ObjectCodec.encode(commit);
+    }
+
+    @Benchmark
+    public Commit decodeCommit() {
+        return ObjectCodec.decode(commitBytes, Commit.class);
+    }
+
+    @Benchmark
+    public byte[] serializeCommit() {
+        return Utils.serialize(commit);
+    }
+
+    @Benchmark
+    public Commit deserializeCommit() {
+        return Utils.deserialize(commitSerialized, Commit.class);
+    }
+
+    @Benchmark
+    public byte[] encodeTree() {
+        return ObjectCodec.encode(tree);
+    }
+
+    @Benchmark
+    public Tree decodeTree() {
+        return ObjectCodec.decode(treeBytes, Tree.class);
+    }
+
+    @Benchmark
+    public byte[] compressBlob() {
+        return Compression.encode(blob);
+    }
+
+    @Benchmark
+    public byte[] decompressBlob() {
+        return Compression.decode(blobCompressed);
+    }
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The index round trip: decoding INDEX as Staging.load does when it
+ *  changed, and writing it back through its lock file as save does. The
+ *  index holds stat data for every file, and FILES / 10 staged changes.
+ *
+ *  @LiZhu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+
+    @Param({"1000", "20000"})
+    public int files;
+
+    private Staging staging;
+
+    @Setup
+    public void setup() {
+        SyntheticRepo repo = SyntheticRepo.create(files, 256, 1);
+        repo.stage(files / 10);
+        staging = Staging.load();
+    }
+
+    @Benchmark
+    public Staging load() {
+        return ObjectCodec.decode(Utils.readContents(Repository.INDEX), Staging.class);
+    }
+
+    @Benchmark
+    public void store() {
+        staging.save();
+    }
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The part of merge that works on whole commits: finding the split point
+ *  of two branches that each made DEPTH commits since it, and merging the
+ *  two sides' file maps into the paths that need a decision, both from the
+ *  tree diffs merge uses and from flattened file maps as it once did.
+ *
+ *  @LiZhu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeBenchmark {
+
+    @Param({"1000", "20000"})
+    public int files;
+
+    @Param({"10", "100"})
+    public int depth;
+
+    private CommitGraph graph;
+    private int ours;
+    private int theirs;
+    private Commit split;
+    private Commit oursCommit;
+    private Commit theirsCommit;
+
+    @Setup
+    public void setup() {
+        SyntheticRepo repo = SyntheticRepo.create(files, 1024, 2);
+        String base = repo.head();
+        repo.gitlet.branch("other");
+        repo.commits(depth);
+        String master = repo.head();
+        repo.gitlet.checkoutBranch("other");
+        repo.commits(depth);
+        graph = CommitGraph.get();
+        ours = graph.row(master);
+        theirs = graph.row(repo.head());
+        split = ObjectStore.readObject(ObjectStore.COMMIT, base, Commit.class);
+        oursCommit = ObjectStore.readObject(ObjectStore.COMMIT, master, Commit.class);
+        theirsCommit = ObjectStore.readObject(ObjectStore.COMMIT, repo.head(), Commit.class);
+    }
+
+    @Benchmark
+    public List<Integer> mergeBase() {
+        return MergeBase.find(graph, ours, theirs);
+    }
+
+    @Benchmark
+    public TreeMap<String, String[]> mergeChanges() {
+        return Checkout.mergeChanges(split, oursCommit, theirsCommit);
+    }
+
+    @Benchmark
+    public TreeMap<String, String[]> mergeFileMaps() {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        TreeMap<String, String> base = Tree.flatten(split.getTreeID());
+        TreeMap<String, String> a = Tree.flatten(oursCommit.getTreeID());
+        TreeMap<String, String> b = Tree.flatten(theirsCommit.getTreeID());
+        for (TreeMap<String, String> side : List.of(base, a, b)) {
+            for (String path : side.keySet()) {
+                changes.computeIfAbsent(path, p -> new String[] {base.get(p), a.get(p), b.get(p)});
+            }
+        }
+        return changes;
+    }
+}
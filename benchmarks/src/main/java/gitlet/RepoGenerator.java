@@ -0,0 +1,135 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Generates a synthetic repository with branches and merges, for
+ *  ScaleHarness to time commands against.
+ *
+ *      java -cp benchmarks/target/benchmarks.jar gitlet.RepoGenerator DIR FILES COMMITS
+ *           [--branches B] [--churn FRACTION] [--merge-every K] [--sizes SPEC]
+ *
+ *  The first commit adds FILES files with sizes drawn from SPEC (see
+ *  SyntheticRepo.Sizes); B branches b1 .. bB then start from it. The other
+ *  COMMITS - 1 commits go round-robin to master and the branches, each
+ *  rewriting FRACTION of the files, and every K-th commit is followed by
+ *  a merge of the next branch into master. Each branch only changes its
+ *  own share of the files, so every merge is clean. At the end each
+ *  branch gets one commit master has not merged, master is checked out and
+ *  everything is packed, as a long-lived repository would be.
+ *
+ *  The commands that ScaleHarness needs ids for are written to
+ *  .gitlet/bench as properties: the tip of master and a commit ten
+ *  first-parent steps behind it to reset between.
+ *
+ *  @LiZhu
+ */
+public class RepoGenerator {
+
+    /** How far behind master's tip the reset target is. */
+    private static final int RESET_DEPTH = 10;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("usage: RepoGenerator DIR FILES COMMITS [--branches B] [--churn FRACTION]"
+                + " [--merge-every K] [--sizes SPEC]");
+            System.exit(2);
+        }
+        File dir = new File(args[0]).getCanonicalFile();
+        int files = Integer.parseInt(args[1]);
+        int commits = Integer.parseInt(args[2]);
+        int branches = 4;
+        double churn = 0.01;
+        int mergeEvery = 20;
+        String sizes = "lognormal:4096";
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--branches":
+                    branches = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--churn":
+                    churn = Double.parseDouble(args[i + 1]);
+                    break;
+                case "--merge-every":
+                    mergeEvery = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--sizes":
+                    sizes = args[i + 1];
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (dir.exists() && dir.list().length > 0) {
+            throw new IllegalArgumentException(dir + " is not empty");
+        }
+        PrintStream out = System.out;
+        /** The commands' own messages would only bury the summary */
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        int changes = Math.max(1, (int) Math.round(churn * files));
+        SyntheticRepo repo = SyntheticRepo.create(dir, files, SyntheticRepo.Sizes.parse(sizes), 1, changes);
+        generate(repo, commits, branches, mergeEvery);
+        System.setOut(out);
+        System.out.printf("generated %d files, %d commits, %d branches in %s in %.1f s%n",
+            files, commits, branches, dir, (System.nanoTime() - start) / 1e9);
+    }
+
+    private static void generate(SyntheticRepo repo, int commits, int branches, int mergeEvery) {
+        Gitlet gitlet = repo.gitlet;
+        List<String> names = new ArrayList<>();
+        names.add("master");
+        for (int b = 1; b <= branches; b++) {
+            names.add("b" + b);
+            gitlet.branch("b" + b);
+        }
+        int current = 0;
+        int merged = 0;
+        for (int c = 1; c < commits; c++) {
+            int side = c % names.size();
+            current = switchTo(gitlet, names, current, side);
+            repo.stage(repo.churn, side, names.size());
+            repo.commit();
+            if (branches > 0 && mergeEvery > 0 && c % mergeEvery == 0) {
+                current = switchTo(gitlet, names, current, 0);
+                gitlet.merge(names.get(1 + merged++ % branches));
+            }
+        }
+        for (int b = 1; b <= branches; b++) {
+            current = switchTo(gitlet, names, current, b);
+            repo.stage(repo.churn, b, names.size());
+            repo.commit();
+        }
+        switchTo(gitlet, names, current, 0);
+        gitlet.gc(true, false);
+
+        String tip = repo.head();
+        CommitGraph graph = CommitGraph.get();
+        int row = graph.row(tip);
+        for (int k = 0; k < RESET_DEPTH && graph.parent(row) != CommitGraph.NONE; k++) {
+            row = graph.parent(row);
+        }
+        String bench = "tip=" + tip + "\nreset=" + graph.id(row) + "\nbranches=" + branches + "\n";
+        try {
+            Files.write(Utils.join(Repository.GITLET_DIR, "bench").toPath(),
+                bench.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Checks out branch TO of NAMES if FROM is not already it, and
+     *  returns TO. */
+    private static int switchTo(Gitlet gitlet, List<String> names, int from, int to) {
+        if (from != to) {
+            gitlet.checkoutBranch(names.get(to));
+        }
+        return to;
+    }
+}
@@ -0,0 +1,286 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Times gitlet's commands end to end, as a user runs them, against
+ *  synthetic repositories of growing size, and reports latency
+ *  percentiles per command and how each grows with the repository.
+ *
+ *      java -cp benchmarks/target/benchmarks.jar gitlet.ScaleHarness
+ *           [--tiers 1,4,16] [--files N] [--commits M] [--branches B]
+ *           [--churn FRACTION] [--merge-every K] [--sizes SPEC] [--runs R]
+ *           [--json FILE] [--baseline FILE] [--tolerance T] [--keep]
+ *
+ *  Tier S is a repository of S * N files and S * M commits, generated by
+ *  RepoGenerator. Every command runs in a fresh JVM, with no daemon and no
+ *  automatic gc, once to warm the page cache and then R times: status,
+ *  log, find, checkout back and forth between master and b1, reset back
+ *  and forth between master's tip and a commit ten behind it, and merge
+ *  of b1 into master, which is reset away again untimed after each run.
+ *
+ *  Results go to FILE (scale-result.json by default) as one JSON record
+ *  per tier and command. Given the results of an earlier run as a
+ *  baseline, the harness exits with status 1 if any command's median got
+ *  more than T (0.25 by default) slower, so it can gate a change.
+ *
+ *  @LiZhu
+ */
+public class ScaleHarness {
+
+    private static final String[] COMMANDS = {"status", "log", "find", "checkout", "reset", "merge"};
+    private static final Pattern RECORD = Pattern.compile(
+        "\"tier\": (\\d+), \"command\": \"(\\w+)\".*\"p50\": ([0-9.]+)");
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final String java = Utils.join(System.getProperty("java.home"), "bin", "java").getPath();
+    private final String classPath = System.getProperty("java.class.path");
+
+    private ScaleHarness(String[] args) {
+        options.put("--tiers", "1,4,16");
+        options.put("--files", "500");
+        options.put("--commits", "100");
+        options.put("--branches", "4");
+        options.put("--churn", "0.01");
+        options.put("--merge-every", "20");
+        options.put("--sizes", "lognormal:4096");
+        options.put("--runs", "10");
+        options.put("--json", "scale-result.json");
+        options.put("--tolerance", "0.25");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--keep")) {
+                options.put("--keep", "true");
+            } else if (options.containsKey(args[i]) || args[i].equals("--baseline")) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException(args[i] + " needs a value");
+                }
+                options.put(args[i], args[++i]);
+            } else {
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.exit(new ScaleHarness(args).run());
+    }
+
+    private int run() throws IOException, InterruptedException {
+        int[] tiers = Arrays.stream(options.get("--tiers").split(",")).mapToInt(Integer::parseInt).toArray();
+        int runs = Integer.parseInt(options.get("--runs"));
+        /** p50 by command, then by tier, for the scaling table */
+        Map<String, double[]> medians = new LinkedHashMap<>();
+        for (String command : COMMANDS) {
+            medians.put(command, new double[tiers.length]);
+        }
+        List<String> records = new ArrayList<>();
+        for (int t = 0; t < tiers.length; t++) {
+            File dir = Files.createTempDirectory("gitlet-scale").toFile().getCanonicalFile();
+            try {
+                Map<String, double[]> samples = tier(dir, tiers[t], runs);
+                System.out.printf("%n%-10s %6s %10s %10s %10s %10s %10s%n",
+                    "command", "runs", "p50 ms", "p90 ms", "p99 ms", "max ms", "mean ms");
+                for (String command : COMMANDS) {
+                    double[] ms = samples.get(command);
+                    Arrays.sort(ms);
+                    double mean = Arrays.stream(ms).average().orElse(0);
+                    System.out.printf(Locale.ROOT, "%-10s %6d %10.1f %10.1f %10.1f %10.1f %10.1f%n", command,
+                        ms.length, percentile(ms, 50), percentile(ms, 90), percentile(ms, 99), ms[ms.length - 1], mean);
+                    medians.get(command)[t] = percentile(ms, 50);
+                    records.add(String.format(Locale.ROOT, "{\"tier\": %d, \"command\": \"%s\", \"runs\": %d,"
+                        + " \"p50\": %.3f, \"p90\": %.3f, \"p99\": %.3f, \"max\": %.3f, \"mean\": %.3f}",
+                        tiers[t], command, ms.length, percentile(ms, 50), percentile(ms, 90),
+                        percentile(ms, 99), ms[ms.length - 1], mean));
+                }
+            } finally {
+                if (options.containsKey("--keep")) {
+                    System.out.println("kept " + dir);
+                } else {
+                    delete(dir);
+                }
+            }
+        }
+        if (tiers.length > 1) {
+            printScaling(tiers, medians);
+        }
+        Files.write(new File(options.get("--json")).toPath(),
+            ("[\n  " + String.join(",\n  ", records) + "\n]\n").getBytes(StandardCharsets.UTF_8));
+        System.out.println("\nresults written to " + options.get("--json"));
+        return options.containsKey("--baseline") ? compare(records) : 0;
+    }
+
+    /** Generates tier SCALE in DIR and returns the milliseconds each
+     *  command took in each of RUNS runs. */
+    private Map<String, double[]> tier(File dir, int scale, int runs) throws IOException, InterruptedException {
+        int files = scale * Integer.parseInt(options.get("--files"));
+        int commits = scale * Integer.parseInt(options.get("--commits"));
+        System.out.printf("%n== tier %d: %d files, %d commits ==%n", scale, files, commits);
+        List<String> generate = new ArrayList<>(List.of(java, "-cp", classPath, "gitlet.RepoGenerator",
+            dir.getPath(), String.valueOf(files), String.valueOf(commits)));
+        for (String option : List.of("--branches", "--churn", "--merge-every", "--sizes")) {
+            generate.addAll(List.of(option, options.get(option)));
+        }
+        ProcessBuilder pb = new ProcessBuilder(generate).inheritIO();
+        if (pb.start().waitFor() != 0) {
+            throw new IllegalStateException("generating tier " + scale + " failed");
+        }
+        Properties bench = new Properties();
+        try (InputStream in = new FileInputStream(new File(dir, ".gitlet/bench"))) {
+            bench.load(in);
+        }
+        String tip = bench.getProperty("tip");
+        String reset = bench.getProperty("reset");
+        boolean branched = Integer.parseInt(bench.getProperty("branches")) > 0;
+
+        Map<String, double[]> samples = new LinkedHashMap<>();
+        samples.put("status", time(dir, runs, "status"));
+        samples.put("log", time(dir, runs, "log"));
+        samples.put("find", time(dir, runs, "find", "commit " + commits / 2));
+        double[] ms = new double[runs];
+        String branch = branched ? "b1" : "master";
+        for (int r = -1; r < runs; r++) {
+            record(ms, r, branched ? gitlet(dir, "checkout", branch) : 0);
+            if (branched) {
+                gitlet(dir, "checkout", "master");
+            }
+        }
+        samples.put("checkout", ms);
+        ms = new double[runs];
+        for (int r = -1; r < runs; r++) {
+            record(ms, r, gitlet(dir, "reset", reset));
+            gitlet(dir, "reset", tip);
+        }
+        samples.put("reset", ms);
+        ms = new double[runs];
+        for (int r = -1; r < runs; r++) {
+            record(ms, r, gitlet(dir, "merge", branch));
+            gitlet(dir, "reset", tip);
+        }
+        samples.put("merge", ms);
+        return samples;
+    }
+
+    /** Returns the milliseconds each of RUNS runs of gitlet with ARGS took,
+     *  after one untimed run. */
+    private double[] time(File dir, int runs, String... args) throws IOException, InterruptedException {
+        double[] ms = new double[runs];
+        for (int r = -1; r < runs; r++) {
+            record(ms, r, gitlet(dir, args));
+        }
+        return ms;
+    }
+
+    /** Stores MS as run R, unless R is the warm-up run, -1. */
+    private static void record(double[] samples, int r, double ms) {
+        if (r >= 0) {
+            samples[r] = ms;
+        }
+    }
+
+    /** Runs gitlet with ARGS in DIR, in a JVM of its own, and returns how
+     *  many milliseconds it took. */
+    private double gitlet(File dir, String... args) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(List.of(java, "-Dgitlet.gcAutoThreshold=" + Integer.MAX_VALUE,
+            "-cp", classPath, "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(dir);
+        pb.environment().put("GITLET_NO_DAEMON", "1");
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+        long start = System.nanoTime();
+        int status = pb.start().waitFor();
+        double ms = (System.nanoTime() - start) / 1e6;
+        if (status != 0) {
+            throw new IllegalStateException("gitlet " + String.join(" ", args) + " exited with " + status);
+        }
+        return ms;
+    }
+
+    /** Returns the P-th percentile of the sorted SAMPLES, by nearest
+     *  rank. */
+    static double percentile(double[] samples, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * samples.length);
+        return samples[Math.max(0, rank - 1)];
+    }
+
+    /** Prints each command's median per tier, and the exponent k in
+     *  time ~ size^k between each pair of neighbouring tiers: about 0 for
+     *  a command that does not grow with the repository, 1 for one that
+     *  grows linearly. */
+    private static void printScaling(int[] tiers, Map<String, double[]> medians) {
+        StringBuilder header = new StringBuilder(String.format("%n%-10s", "p50 ms"));
+        for (int tier : tiers) {
+            header.append(String.format("%10s", "x" + tier));
+        }
+        for (int t = 1; t < tiers.length; t++) {
+            header.append(String.format("%12s", "k " + tiers[t - 1] + "->" + tiers[t]));
+        }
+        System.out.println(header);
+        for (Map.Entry<String, double[]> e : medians.entrySet()) {
+            double[] p50 = e.getValue();
+            StringBuilder line = new StringBuilder(String.format("%-10s", e.getKey()));
+            for (double ms : p50) {
+                line.append(String.format(Locale.ROOT, "%10.1f", ms));
+            }
+            for (int t = 1; t < tiers.length; t++) {
+                double k = Math.log(p50[t] / p50[t - 1]) / Math.log((double) tiers[t] / tiers[t - 1]);
+                line.append(String.format(Locale.ROOT, "%12.2f", k));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /** Compares the medians in RECORDS with the baseline's, and returns 1
+     *  if any regressed beyond the tolerance, else 0. */
+    private int compare(List<String> records) throws IOException {
+        double tolerance = Double.parseDouble(options.get("--tolerance"));
+        Map<String, Double> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(new File(options.get("--baseline")).toPath())) {
+            Matcher m = RECORD.matcher(line);
+            if (m.find()) {
+                baseline.put(m.group(1) + " " + m.group(2), Double.parseDouble(m.group(3)));
+            }
+        }
+        int regressions = 0;
+        System.out.printf("%nagainst %s (tolerance %.0f%%):%n", options.get("--baseline"), tolerance * 100);
+        for (String record : records) {
+            Matcher m = RECORD.matcher(record);
+            m.find();
+            Double before = baseline.get(m.group(1) + " " + m.group(2));
+            if (before == null) {
+                continue;
+            }
+            double after = Double.parseDouble(m.group(3));
+            boolean regressed = after > before * (1 + tolerance);
+            regressions += regressed ? 1 : 0;
+            System.out.printf(Locale.ROOT, "  x%-4s %-10s %10.1f -> %10.1f ms %+7.1f%%%s%n", m.group(1), m.group(2),
+                before, after, (after / before - 1) * 100, regressed ? "  REGRESSION" : "");
+        }
+        return regressions > 0 ? 1 : 0;
+    }
+
+    /** Deletes FILE and everything under it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** A repository generated for benchmarking, in a new temporary directory
+ *  or a given one.
+ *
+ *  It holds FILES text files, a hundred to a directory, whose sizes are
+ *  drawn from a Sizes distribution, committed once and then changed by
+ *  DEPTH - 1 more commits that each rewrite CHURN of the files. Contents
+ *  come from a fixed seed, so every run builds the same history.
+ *
+ *  A temporary directory is deleted when the JVM exits. Repository's paths
+ *  are fixed when the class is first loaded, from the user.dir property, so
+ *  a JVM can only ever work in one repository: each benchmark must run in a
+ *  fork of its own, as JMH does by default.
+ *
+ *  @LiZhu
+ */
+public class SyntheticRepo {
+
+    private static final int FILES_PER_DIR = 100;
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "commit", "tree", "blob",
+        "merge", "branch", "index", "0", "1", "42", "{", "}", "return", "static", "void", "=", ";"};
+
+    final Gitlet gitlet = new Gitlet();
+    final int files;
+    final Sizes sizes;
+    final int churn;
+    private final Random random = new Random(20240601);
+    private int commits;
+
+    /** A distribution of file sizes, written as fixed:N, uniform:MIN-MAX
+     *  or lognormal:MEDIAN (with a sigma of 1, so most files are small and
+     *  a few are large, as in real source trees). */
+    public static final class Sizes {
+        private final String kind;
+        private final int a;
+        private final int b;
+
+        private Sizes(String kind, int a, int b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        public static Sizes parse(String spec) {
+            String[] parts = spec.split(":", 2);
+            if (parts.length == 2) {
+                String[] range = parts[1].split("-", 2);
+                int a = Integer.parseInt(range[0]);
+                switch (parts[0]) {
+                    case "fixed":
+                    case "lognormal":
+                        return new Sizes(parts[0], a, a);
+                    case "uniform":
+                        return new Sizes(parts[0], a, Integer.parseInt(range[1]));
+                    default:
+                        break;
+                }
+            }
+            throw new IllegalArgumentException("bad size distribution: " + spec);
+        }
+
+        int next(Random random) {
+            switch (kind) {
+                case "uniform":
+                    return a + random.nextInt(b - a + 1);
+                case "lognormal":
+                    return (int) Math.min(64L << 20, Math.round(a * Math.exp(random.nextGaussian())));
+                default:
+                    return a;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return kind + ":" + (kind.equals("uniform") ? a + "-" + b : String.valueOf(a));
+        }
+    }
+
+    private SyntheticRepo(int files, Sizes sizes, int churn) {
+        this.files = files;
+        this.sizes = sizes;
+        this.churn = churn;
+    }
+
+    /** Creates the repository described above, rewriting one in twenty
+     *  files per commit, and makes it the working directory. */
+    public static SyntheticRepo create(int files, int fileSize, int depth) {
+        return create(files, fileSize, depth, Math.max(1, files / 20));
+    }
+
+    public static SyntheticRepo create(int files, int fileSize, int depth, int churn) {
+        File dir;
+        try {
+            dir = Files.createTempDirectory("gitlet-bench").toFile().getCanonicalFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir)));
+        return create(dir, files, new Sizes("fixed", fileSize, fileSize), depth, churn);
+    }
+
+    /** Creates the repository in DIR, which must be empty or not exist,
+     *  with file sizes drawn from SIZES, and makes it the working
+     *  directory. */
+    public static SyntheticRepo create(File dir, int files, Sizes sizes, int depth, int churn) {
+        dir.mkdirs();
+        System.setProperty("user.dir", dir.getPath());
+        if (!Repository.CWD.equals(dir)) {
+            throw new IllegalStateException("a repository was already opened in this JVM; run with forks");
+        }
+        SyntheticRepo repo = new SyntheticRepo(files, sizes, churn);
+        repo.gitlet.init();
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            all.add(repo.write(i));
+        }
+        repo.gitlet.add(all);
+        repo.commit();
+        repo.commits(depth - 1);
+        return repo;
+    }
+
+    /** Makes N more commits on the current branch, each rewriting CHURN
+     *  randomly chosen files. */
+    public void commits(int n) {
+        for (int c = 0; c < n; c++) {
+            stage(churn);
+            commit();
+        }
+    }
+
+    /** Commits what is staged, with the message "commit K" for the K-th
+     *  commit made, counting from 0. */
+    public void commit() {
+        gitlet.commit("commit " + commits++);
+    }
+
+    /** Rewrites N randomly chosen files and stages them. */
+    public void stage(int n) {
+        stage(n, 0, 1);
+    }
+
+    /** Rewrites N randomly chosen files among those whose number is PART
+     *  modulo PARTS, and stages them. Branches that each change their own
+     *  part of the files merge without conflicts. */
+    public void stage(int n, int part, int parts) {
+        List<String> changed = new ArrayList<>();
+        int candidates = (files - part + parts - 1) / parts;
+        for (int k = 0; k < n && candidates > 0; k++) {
+            changed.add(write(part + parts * random.nextInt(candidates)));
+        }
+        gitlet.add(changed);
+    }
+
+    /** Returns the id of the current commit. */
+    public String head() {
+        return Refs.read(new File(Utils.readContentsAsString(Repository.HEAD)).getName());
+    }
+
+    /** Deletes FILE and everything under it. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Returns the path of file I, relative to the working directory. */
+    public static String path(int i) {
+        return "d" + (i / FILES_PER_DIR) + "/f" + i + ".txt";
+    }
+
+    private String write(int i) {
+        String path = path(i);
+        File f = Utils.join(Repository.CWD, path);
+        f.getParentFile().mkdirs();
+        int size = sizes.next(random);
+        StringBuilder s = new StringBuilder(size + 64);
+        s.append("file ").append(i).append(" version ").append(commits).append('\n');
+        while (s.length() < size) {
+            for (int w = 0; w < 8; w++) {
+                s.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            s.append('\n');
+        }
+        try {
+            Files.write(f.toPath(), s.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return path;
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** FastCDC cut points of ChunkedBlob: chunks tile the input within their
+ *  size bounds, and an edit moves only the cut points around it.
+ *
+ *  @LiZhu
+ */
+class ChunkedBlobTest {
+
+    private static final int MIN_SIZE = 16 << 10;
+    private static final int AVG_SIZE = 64 << 10;
+    private static final int MAX_SIZE = 256 << 10;
+
+    private final Random random = new Random(19);
+
+    private byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    /** Returns the chunk lengths of BUF, cut as store cuts a file. */
+    private static List<Integer> chunks(byte[] buf) {
+        List<Integer> lengths = new ArrayList<>();
+        for (int off = 0; off < buf.length; ) {
+            int len = ChunkedBlob.cut(buf, off, buf.length - off);
+            lengths.add(len);
+            off += len;
+        }
+        return lengths;
+    }
+
+    /** Returns the SHA-1 of each chunk of BUF. */
+    private static Set<String> ids(byte[] buf) {
+        Set<String> ids = new HashSet<>();
+        int off = 0;
+        for (int len : chunks(buf)) {
+            byte[] chunk = new byte[len];
+            System.arraycopy(buf, off, chunk, 0, len);
+            ids.add(Utils.sha1(chunk));
+            off += len;
+        }
+        return ids;
+    }
+
+    @Test
+    void chunksTileTheInput() {
+        byte[] buf = bytes(8 << 20);
+        List<Integer> lengths = chunks(buf);
+        long total = 0;
+        for (int i = 0; i < lengths.size(); i++) {
+            int len = lengths.get(i);
+            assertTrue(len <= MAX_SIZE);
+            assertTrue(len >= MIN_SIZE || i == lengths.size() - 1);
+            total += len;
+        }
+        assertEquals(buf.length, total);
+        long average = buf.length / lengths.size();
+        assertTrue(average > AVG_SIZE / 2 && average < AVG_SIZE * 2, "average " + average);
+        assertEquals(lengths, chunks(buf.clone()));
+    }
+
+    @Test
+    void smallAndUniformInputs() {
+        assertEquals(List.of(100), chunks(bytes(100)));
+        assertEquals(List.of(MIN_SIZE), chunks(bytes(MIN_SIZE)));
+        /** A gear hash over constant bytes never cuts early */
+        List<Integer> zeros = chunks(new byte[MAX_SIZE * 3]);
+        assertEquals(List.of(MAX_SIZE, MAX_SIZE, MAX_SIZE), zeros);
+    }
+
+    @Test
+    void editsMoveOnlyNearbyCuts() {
+        byte[] buf = bytes(4 << 20);
+        Set<String> before = ids(buf);
+        /** Insert a few bytes in the middle: everything after resynchronizes */
+        byte[] edited = new byte[buf.length + 7];
+        int at = buf.length / 2;
+        System.arraycopy(buf, 0, edited, 0, at);
+        System.arraycopy(bytes(7), 0, edited, at, 7);
+        System.arraycopy(buf, at, edited, at + 7, buf.length - at);
+        Set<String> after = ids(edited);
+        after.removeAll(before);
+        assertTrue(after.size() <= 3, after.size() + " new chunks");
+    }
+}
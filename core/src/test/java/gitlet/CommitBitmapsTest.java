@@ -0,0 +1,70 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Round trips of the EWAH-style encoding of reachability bitmaps.
+ *
+ *  @LiZhu
+ */
+class CommitBitmapsTest {
+
+    private static void assertRoundTrip(BitSet bits) {
+        byte[] data = CommitBitmaps.encode(bits);
+        assertEquals(bits, CommitBitmaps.decode(ByteBuffer.wrap(data)));
+    }
+
+    @Test
+    void edgeCases() {
+        assertRoundTrip(new BitSet());
+        BitSet one = new BitSet();
+        one.set(0);
+        assertRoundTrip(one);
+        BitSet last = new BitSet();
+        last.set(63);
+        last.set(64);
+        last.set(100000);
+        assertRoundTrip(last);
+    }
+
+    @Test
+    void runsAndLiterals() {
+        Random random = new Random(7);
+        for (int trial = 0; trial < 200; trial++) {
+            BitSet bits = new BitSet();
+            int pos = 0;
+            while (pos < 50000) {
+                int len = 1 + random.nextInt(random.nextBoolean() ? 5000 : 100);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        bits.set(pos, pos + len);
+                        break;
+                    case 1:
+                        for (int i = pos; i < pos + len; i++) {
+                            bits.set(i, random.nextInt(4) == 0);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                pos += len;
+            }
+            assertRoundTrip(bits);
+        }
+    }
+
+    @Test
+    void cleanRunsAreCompressed() {
+        /** History as reachability bitmaps see it: almost every row set */
+        BitSet bits = new BitSet();
+        bits.set(0, 1 << 20);
+        bits.clear(12345);
+        assertTrue(CommitBitmaps.encode(bits).length < 64);
+        assertRoundTrip(bits);
+    }
+}
@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Commit times, and the --since and --until dates compared with them,
+ *  in a zone that is not the -0800 commits used to be marked with.
+ *
+ *  @LiZhu
+ */
+class CommitTimeTest {
+
+    private static final String TREE = "0123456789abcdef0123456789abcdef01234567";
+
+    private TimeZone saved;
+
+    @BeforeEach
+    void setZone() {
+        saved = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Tokyo"));
+    }
+
+    @AfterEach
+    void restoreZone() {
+        TimeZone.setDefault(saved);
+    }
+
+    @Test
+    void newCommitKeepsItsTime() {
+        long before = System.currentTimeMillis();
+        Commit c = new Commit("message", null, TREE);
+        long after = System.currentTimeMillis();
+        assertTrue(c.getTimestamp() >= before && c.getTimestamp() <= after);
+        assertTrue(c.getDate().endsWith(" +0900"), c.getDate());
+
+        Commit decoded = ObjectCodec.decode(ObjectCodec.encode(c), Commit.class);
+        assertEquals(c.getTimestamp(), decoded.getTimestamp());
+        assertEquals(c.getDate(), decoded.getDate());
+        assertEquals(c.getUID(), decoded.getUID());
+    }
+
+    @Test
+    void initialCommitIsAtTheEpoch() {
+        assertEquals(0, new Commit().getTimestamp());
+    }
+
+    @Test
+    void versionOneDateIsLocalTime() {
+        long time = 1500000000000L;
+        String date = new SimpleDateFormat("E MMM dd HH:mm:ss yyyy").format(new Date(time)) + " -0800";
+        ObjectWriter out = new ObjectWriter(128);
+        out.writeByte(ObjectCodec.COMMIT);
+        out.writeByte(1);
+        out.writeHash(TREE);
+        out.writeString(date);
+        out.writeString("old");
+        out.writeOptionalHash(null);
+        out.writeOptionalHash(null);
+        out.writeHash(TREE);
+        Commit c = ObjectCodec.decode(out.toByteArray(), Commit.class);
+        assertEquals(time, c.getTimestamp());
+    }
+
+    @Test
+    void sinceDateMatchesCommitTime() {
+        long midnight = LocalDate.of(2024, 3, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        assertEquals(midnight, CommitIndex.parseDate("2024-03-01"));
+        assertEquals(midnight + 3723000, CommitIndex.parseDate("2024-03-01 01:02:03"));
+    }
+}
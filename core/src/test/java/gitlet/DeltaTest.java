@@ -0,0 +1,133 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Round trips of pack deltas, and of objects through a written pack.
+ *
+ *  @LiZhu
+ */
+class DeltaTest {
+
+    private final Random random = new Random(42);
+
+    @TempDir
+    File dir;
+
+    private byte[] bytes(int n) {
+        byte[] b = new byte[n];
+        random.nextBytes(b);
+        return b;
+    }
+
+    /** Returns BASE with a few blocks replaced, inserted and removed. */
+    private byte[] edit(byte[] base) {
+        List<Byte> out = new ArrayList<>();
+        for (byte x : base) {
+            out.add(x);
+        }
+        for (int k = 0; k < 5 && !out.isEmpty(); k++) {
+            int at = random.nextInt(out.size());
+            int len = Math.min(out.size() - at, random.nextInt(200));
+            switch (k % 3) {
+                case 0:
+                    out.subList(at, at + len).clear();
+                    break;
+                case 1:
+                    for (byte x : bytes(len)) {
+                        out.add(at, x);
+                    }
+                    break;
+                default:
+                    for (int i = 0; i < len; i++) {
+                        out.set(at + i, (byte) random.nextInt());
+                    }
+            }
+        }
+        byte[] b = new byte[out.size()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = out.get(i);
+        }
+        return b;
+    }
+
+    private static void assertRoundTrip(byte[] base, byte[] target) {
+        assertArrayEquals(target, Delta.apply(base, Delta.create(base, target)));
+    }
+
+    @Test
+    void editedTargets() {
+        for (int n : new int[] {1, 100, 4096, 100000}) {
+            byte[] base = bytes(n);
+            byte[] target = edit(base);
+            assertRoundTrip(base, target);
+            assertTrue(Delta.create(base, target).length < target.length / 2 || n < 4096);
+        }
+    }
+
+    @Test
+    void edgeCases() {
+        byte[] base = bytes(5000);
+        assertRoundTrip(base, base);
+        assertRoundTrip(base, new byte[0]);
+        assertRoundTrip(new byte[0], base);
+        assertRoundTrip(new byte[0], new byte[0]);
+        assertRoundTrip(base, bytes(5000));
+        byte[] doubled = Arrays.copyOf(base, 10000);
+        System.arraycopy(base, 0, doubled, 5000, 5000);
+        assertRoundTrip(base, doubled);
+    }
+
+    @Test
+    void packRoundTrip() {
+        List<PackFile.Entry> entries = new ArrayList<>();
+        List<byte[]> contents = new ArrayList<>();
+        byte[] base = bytes(20000);
+        for (int i = 0; i < 40; i++) {
+            /** Similar blobs, so most are stored as deltas, and other types */
+            byte[] data = i % 4 == 3 ? bytes(300) : edit(base);
+            int type = i % 4 == 3 ? ObjectStore.TREE : ObjectStore.BLOB;
+            String id = Utils.sha1(data);
+            contents.add(data);
+            entries.add(new PackFile.Entry(id, type, data.length, () -> data));
+        }
+        List<File> written = PackFile.write(dir, entries);
+        assertEquals(1, written.size());
+        PackFile pack = new PackFile(written.get(0));
+        assertEquals(entries.size(), pack.size());
+        for (int i = 0; i < entries.size(); i++) {
+            PackFile.Entry e = entries.get(i);
+            int row = pack.find(e.type, e.id);
+            assertTrue(row >= 0);
+            assertEquals(e.type, pack.typeAt(row));
+            assertArrayEquals(contents.get(i), pack.read(e.type, e.id));
+        }
+        assertNull(pack.read(ObjectStore.BLOB, Utils.sha1("missing")));
+        assertTrue(pack.getPackFile().length() < 40 * 20000 / 4);
+    }
+
+    @Test
+    void oneIdUnderTwoTypes() {
+        /** A blob once stored whole and later as a manifest of chunks */
+        byte[] blob = bytes(1000);
+        byte[] manifest = bytes(50);
+        String id = Utils.sha1(blob);
+        List<PackFile.Entry> entries = List.of(
+            new PackFile.Entry(id, ObjectStore.BLOB, blob.length, () -> blob),
+            new PackFile.Entry(id, ObjectStore.MANIFEST, manifest.length, () -> manifest),
+            new PackFile.Entry(Utils.sha1(manifest), ObjectStore.CHUNK, manifest.length, () -> manifest));
+        PackFile pack = new PackFile(PackFile.write(dir, entries).get(0));
+        assertArrayEquals(blob, pack.read(ObjectStore.BLOB, id));
+        assertArrayEquals(manifest, pack.read(ObjectStore.MANIFEST, id));
+        assertNull(pack.read(ObjectStore.TREE, id));
+        assertEquals(-1, pack.find(ObjectStore.CHUNK, id));
+    }
+}
@@ -0,0 +1,128 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Edit scripts of Diff: the lines each one keeps and deletes rebuild the
+ *  old text, the lines it keeps and inserts rebuild the new one, and on
+ *  small texts the script is as short as the longest common subsequence
+ *  allows.
+ *
+ *  @LiZhu
+ */
+class DiffTest {
+
+    private final Random random = new Random(17);
+
+    @TempDir
+    File dir;
+
+    private Diff.Text text(String name, String contents) throws IOException {
+        File f = new File(dir, name);
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return Diff.Text.file(f);
+    }
+
+    /** Returns N lines drawn from an alphabet of K distinct ones. */
+    private List<String> lines(int n, int k) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            lines.add("line " + random.nextInt(k) + "\n");
+        }
+        return lines;
+    }
+
+    /** Checks the script from A to B and returns its number of changes. */
+    private int check(String a, String b) throws IOException {
+        Diff.Text ta = text("a", a);
+        Diff.Text tb = text("b", b);
+        Diff d = new Diff(ta, tb);
+        ByteArrayOutputStream oldText = new ByteArrayOutputStream();
+        ByteArrayOutputStream newText = new ByteArrayOutputStream();
+        int changes = 0;
+        for (int op = d.next(); op != Diff.END; op = d.next()) {
+            if (op == Diff.EQUAL) {
+                assertTrue(ta.sameLine(d.opA(), tb, d.opB()));
+            } else {
+                changes++;
+            }
+            if (op != Diff.INSERT) {
+                ta.copyLine(d.opA(), oldText, false);
+            }
+            if (op != Diff.DELETE) {
+                tb.copyLine(d.opB(), newText, false);
+            }
+        }
+        assertEquals(a, oldText.toString(StandardCharsets.UTF_8));
+        assertEquals(b, newText.toString(StandardCharsets.UTF_8));
+        return changes;
+    }
+
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] t = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                t[i][j] = a.get(i).equals(b.get(j)) ? t[i + 1][j + 1] + 1 : Math.max(t[i + 1][j], t[i][j + 1]);
+            }
+        }
+        return t[0][0];
+    }
+
+    @Test
+    void scriptsAreMinimal() throws IOException {
+        for (int trial = 0; trial < 300; trial++) {
+            List<String> a = lines(random.nextInt(40), 1 + random.nextInt(6));
+            List<String> b = lines(random.nextInt(40), 1 + random.nextInt(6));
+            int changes = check(String.join("", a), String.join("", b));
+            assertEquals(a.size() + b.size() - 2 * lcs(a, b), changes);
+        }
+    }
+
+    @Test
+    void edgeCases() throws IOException {
+        assertEquals(0, check("", ""));
+        assertEquals(2, check("", "x\ny\n"));
+        assertEquals(2, check("x\ny\n", ""));
+        assertEquals(0, check("same\n", "same\n"));
+        assertEquals(2, check("a\nb", "a\nb\n"));
+        assertEquals(2, check("a\r\nb\n", "a\nb\n"));
+    }
+
+    @Test
+    void textsLongerThanTheWindow() throws IOException {
+        List<String> a = new ArrayList<>();
+        for (int i = 0; i < 200000; i++) {
+            a.add("row " + i + "\n");
+        }
+        List<String> b = new ArrayList<>(a);
+        for (int k = 0; k < 50; k++) {
+            int at = random.nextInt(b.size());
+            b.set(at, "changed " + k + "\n");
+        }
+        int changes = check(String.join("", a), String.join("", b));
+        assertTrue(changes <= 100, "changes " + changes);
+    }
+
+    @Test
+    void unifiedDiff() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.write("f.txt", "old", text("a", "1\n2\n3\n4\n5\n6\n7\n8\n9\n"),
+            "new", text("b", "1\n2\n3\n4\nfive\n6\n7\n8\n9\n"), out);
+        assertEquals("diff --gitlet a/f.txt b/f.txt\n"
+            + "--- a/f.txt\n"
+            + "+++ b/f.txt\n"
+            + "@@ -2,7 +2,7 @@\n"
+            + " 2\n 3\n 4\n-5\n+five\n 6\n 7\n 8\n", out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Three-way merges: a side that did not change gives way to the other,
+ *  changes to different lines combine, and changes to the same lines
+ *  conflict.
+ *
+ *  @LiZhu
+ */
+class ThreeWayMergeTest {
+
+    private final Random random = new Random(18);
+
+    @TempDir
+    File dir;
+
+    private int files;
+
+    private Diff.Text text(String contents) throws IOException {
+        File f = new File(dir, "text" + files++);
+        Files.write(f.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return Diff.Text.file(f);
+    }
+
+    /** Merges OURS and THEIRS with BASE, expecting CONFLICT, and returns
+     *  the result. */
+    private String merge(String base, String ours, String theirs, boolean conflict) throws IOException {
+        File out = new File(dir, "merged" + files++);
+        assertEquals(conflict, ThreeWayMerge.merge(text(base), text(ours), text(theirs), out));
+        return Files.readString(out.toPath());
+    }
+
+    private static String numbered(int n) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 1; i <= n; i++) {
+            s.append(i).append('\n');
+        }
+        return s.toString();
+    }
+
+    /** Returns TEXT with a few lines replaced, inserted and removed. */
+    private String edit(String text) {
+        List<String> lines = new ArrayList<>(List.of(text.split("(?<=\n)")));
+        for (int k = 0; k < 4; k++) {
+            int at = random.nextInt(lines.size());
+            switch (random.nextInt(3)) {
+                case 0:
+                    lines.remove(at);
+                    break;
+                case 1:
+                    lines.add(at, "inserted " + k + "\n");
+                    break;
+                default:
+                    lines.set(at, "replaced " + k + "\n");
+            }
+        }
+        return String.join("", lines);
+    }
+
+    @Test
+    void oneSideChanged() throws IOException {
+        for (int trial = 0; trial < 50; trial++) {
+            String base = numbered(30);
+            String changed = edit(base);
+            assertEquals(changed, merge(base, changed, base, false));
+            assertEquals(changed, merge(base, base, changed, false));
+            assertEquals(changed, merge(base, changed, changed, false));
+        }
+    }
+
+    @Test
+    void separateChangesCombine() throws IOException {
+        String base = numbered(20);
+        String ours = base.replace("3\n", "three\n");
+        String theirs = base.replace("16\n", "sixteen\n").replace("20\n", "20\n21\n");
+        assertEquals(base.replace("3\n", "three\n").replace("16\n", "sixteen\n").replace("20\n", "20\n21\n"),
+            merge(base, ours, theirs, false));
+    }
+
+    @Test
+    void sameLinesConflict() throws IOException {
+        String base = "a\nb\nc\nd\n";
+        assertEquals("a\n<<<<<<< HEAD\nours\n=======\ntheirs\n>>>>>>>\nc\nd\n",
+            merge(base, "a\nours\nc\nd\n", "a\ntheirs\nc\nd\n", true));
+        assertEquals("a\n<<<<<<< HEAD\n=======\ntheirs\n>>>>>>>\nc\nd\n",
+            merge(base, "a\nc\nd\n", "a\ntheirs\nc\nd\n", true));
+        assertEquals("<<<<<<< HEAD\nx\n=======\ny\n>>>>>>>\n", merge("", "x", "y", true));
+    }
+
+    @Test
+    void binaryConflictsAsAWhole() throws IOException {
+        assertEquals("<<<<<<< HEAD\nx\0=======\ny\0>>>>>>>\n", merge("base", "x\0", "y\0", true));
+    }
+}
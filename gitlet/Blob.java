@@ -3,46 +3,134 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 import static gitlet.Utils.*;
 
-/** Represents a gitlet blob object.
+/** Represents a gitlet blob object: the contents of one file.
+ *
+ *  A loose blob is stored as the file contents, compressed unless that
+ *  saves little, under its UID, the SHA-1 of the contents. File names live
+ *  in the trees that refer to the blob, so storing and checking out a
+ *  loose blob streams it between files a buffer at a time, or copies it
+ *  with FileChannel.transferTo if it is not compressed, and never holds
+ *  the contents on the heap. Blobs inside packfiles are read into memory.
+ *  Files larger than ChunkedBlob.THRESHOLD are stored in chunks instead.
  *
  *  @LiZhu
  */
 public class Blob implements Serializable {
+    /** Version of the binary encoding. */
+    private static final int VERSION = 1;
+    /** Fixed so that Java-serialized objects from older repositories can
+     *  still be read by migrate. */
+    private static final long serialVersionUID = -8736606314058642062L;
+
+    /** Size of the buffer used for hashing. */
+    private static final int BUFFER_SIZE = 1 << 16;
 
     private String UID;
-    private String filename;
     private byte[] content;
 
-    public Blob(String filename, File file) {
-        this.filename = filename;
-        this.content = readContents(file);
-        this.UID = sha1(this.content);
+    /** Reads a blob in the encoding used before blobs were stored raw,
+     *  which also held the name of the file it was added from. Only
+     *  migrate meets such blobs. */
+    Blob(ObjectReader in) {
+        in.readHeader(ObjectCodec.BLOB, VERSION);
+        this.UID = in.readHash();
+        in.readString();
+        this.content = in.readBytes((int) in.readVarint());
     }
 
     public String getUID() {
         return UID;
     }
 
-    public String getFilename() {
-        return filename;
-    }
-
     public byte[] getContent() {
         return content;
     }
 
-    public void storeBlob() {
-        File file = join(Repository.BLOB_DIR, this.UID);
-        try {
-            file.createNewFile();
-            writeObject(file, this);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /** Returns the blob UID of the contents of FILE, read in chunks. */
+    public static String hash(File file) {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buf) >= 0) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+            Trace.count(Trace.Counter.FILES_HASHED);
+            Trace.count(Trace.Counter.BYTES_HASHED, in.size());
+            Trace.count(Trace.Counter.FILES_READ);
+            Trace.count(Trace.Counter.BYTES_READ, in.size());
+            return PackFile.toHex(md.digest());
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Stores the contents of FILE as a blob, unless it is stored already,
+     *  and returns its UID. */
+    public static String store(File file) {
+        return store(file, hash(file));
+    }
+
+    /** Stores the contents of FILE as blob UID, which the caller has
+     *  already computed, unless it is stored already. Returns UID. */
+    public static String store(File file, String uid) {
+        if (ObjectStore.contains(ObjectStore.BLOB, uid) || ChunkedBlob.exists(uid)) {
+            return uid;
+        }
+        if (file.length() > ChunkedBlob.THRESHOLD) {
+            ChunkedBlob.store(file, uid);
+        } else {
+            File tmp = ObjectStore.tempFile(ObjectStore.BLOB, uid);
+            Compression.store(file, tmp);
+            ObjectStore.install(tmp, ObjectStore.BLOB, uid);
         }
+        return uid;
+    }
+
+    /** Returns the contents of blob UID, which must not be chunked: those
+     *  are too large to hold in memory and are only streamed, by copy and
+     *  checkout. */
+    public static byte[] read(String uid) {
+        return ObjectStore.read(ObjectStore.BLOB, uid);
     }
 
+    /** Writes the contents of blob UID to OUT at its position, a buffer or
+     *  a chunk at a time. */
+    static void copy(String uid, FileChannel out) throws IOException {
+        File loose = join(ObjectStore.looseDir(ObjectStore.BLOB), uid);
+        if (loose.isFile()) {
+            Compression.copy(loose, out);
+        } else if (ChunkedBlob.exists(uid)) {
+            ChunkedBlob.copy(uid, out);
+        } else {
+            ByteBuffer data = ByteBuffer.wrap(read(uid));
+            Trace.count(Trace.Counter.BYTES_WRITTEN, data.remaining());
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+        }
+    }
 
+    /** Writes the contents of blob UID to FILE, creating its directory if
+     *  needed. */
+    public static void checkout(String uid, File file) {
+        file.getParentFile().mkdirs();
+        File loose = join(ObjectStore.looseDir(ObjectStore.BLOB), uid);
+        if (loose.isFile()) {
+            Compression.checkout(loose, file);
+        } else if (ChunkedBlob.exists(uid)) {
+            ChunkedBlob.checkout(uid, file);
+        } else {
+            writeContents(file, read(uid));
+        }
+    }
 }
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.*;
+
+/** Moves the working directory from one commit to another by touching
+ *  only the paths whose blobs differ between the two.
+ *
+ *  Deletions run first, on the calling thread, so that a file replaced by
+ *  a directory of the same name (or the reverse) is out of the way. Files
+ *  are then written on a fixed pool of TreeScanner.parallelism() threads
+ *  fed through a bounded queue; when the queue is full the calling thread
+ *  writes the file itself. Small changes are written serially.
+ *
+ *  @LiZhu
+ */
+class Checkout {
+
+    /** Returns the paths that differ between commits FROM and TO, mapped to
+     *  their blobs in FROM and in TO; either is null where the commit does
+     *  not have the path. */
+    static TreeMap<String, String[]> changes(Commit from, Commit to) {
+        return Trace.timed("tree-diff", () -> treeDiff(from, to));
+    }
+
+    private static TreeMap<String, String[]> treeDiff(Commit from, Commit to) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(from.getTreeID(), to.getTreeID(),
+            (path, oldBlob, newBlob) -> changes.put(path, new String[] {oldBlob, newBlob}));
+        return changes;
+    }
+
+    /** Returns the paths that differ between commit SPLIT and either of
+     *  OURS and THEIRS, mapped to their blobs in SPLIT, OURS and THEIRS. */
+    static TreeMap<String, String[]> mergeChanges(Commit split, Commit ours, Commit theirs) {
+        return Trace.timed("tree-diff", () -> treeDiff(split, ours, theirs));
+    }
+
+    private static TreeMap<String, String[]> treeDiff(Commit split, Commit ours, Commit theirs) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        Tree.diff(split.getTreeID(), ours.getTreeID(), (path, base, blob) ->
+                changes.computeIfAbsent(path, k -> new String[] {base, base, base})[1] = blob);
+        Tree.diff(split.getTreeID(), theirs.getTreeID(), (path, base, blob) ->
+                changes.computeIfAbsent(path, k -> new String[] {base, base, base})[2] = blob);
+        return changes;
+    }
+
+    /** Exits if one of CHANGES would overwrite a working file that is
+     *  neither tracked in the commit being left nor staged in SA. */
+    static void checkUntracked(Map<String, String[]> changes, Staging sa) {
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            String path = e.getKey();
+            String[] blobs = e.getValue();
+            if (blobs[0] == null && blobs[1] != null && join(CWD, path).isFile()
+                    && !sa.getStagingAdd().containsKey(path)) {
+                exitWithError("There is an untracked file in the way; delete it, or add and commit it first.");
+            }
+        }
+    }
+
+    /** Applies CHANGES, as returned by changes, to the working directory,
+     *  and returns the number of files written or deleted. */
+    static int apply(Map<String, String[]> changes) {
+        return Trace.timed("checkout", () -> applyChanges(changes));
+    }
+
+    private static int applyChanges(Map<String, String[]> changes) {
+        List<String[]> writes = new ArrayList<>();
+        for (Map.Entry<String, String[]> e : changes.entrySet()) {
+            if (e.getValue()[1] == null) {
+                deleteWorkingFile(e.getKey());
+            } else {
+                writes.add(new String[] {e.getKey(), e.getValue()[1]});
+            }
+        }
+        int threads = TreeScanner.parallelism();
+        if (threads == 1 || writes.size() < TreeScanner.SERIAL_THRESHOLD) {
+            for (String[] w : writes) {
+                Blob.checkout(w[1], join(CWD, w[0]));
+            }
+            return changes.size();
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            List<Future<?>> pending = new ArrayList<>(writes.size());
+            for (String[] w : writes) {
+                pending.add(pool.submit(() -> Blob.checkout(w[1], join(CWD, w[0]))));
+            }
+            for (Future<?> f : pending) {
+                f.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("checkout interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return changes.size();
+    }
+
+    /** Deletes working file PATH, which may be in a subdirectory, and any
+     *  directories that deleting it leaves empty. */
+    static void deleteWorkingFile(String path) {
+        File file = join(CWD, path);
+        if (file.getParentFile().equals(CWD)) {
+            restrictedDelete(file);
+            return;
+        }
+        file.delete();
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+}
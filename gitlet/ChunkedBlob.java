@@ -0,0 +1,218 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** A large blob stored as content-defined chunks.
+ *
+ *  Files over gitlet.chunkThreshold bytes (16 MB by default) are cut into
+ *  chunks with FastCDC: a gear hash is rolled over the bytes, and a chunk
+ *  ends where its masked bits are zero, using a stricter mask before the
+ *  average size and a looser one after it so chunk sizes stay close to
+ *  the average. Cut points depend only on nearby content, so an edit
+ *  changes only the chunks around it, and the other chunks of a new
+ *  version are already stored.
+ *
+ *  Each chunk is an object of type CHUNK named by the SHA-1 of its bytes.
+ *  The blob itself is a manifest object of type MANIFEST, stored under the
+ *  blob's usual UID (the SHA-1 of the whole file), listing its chunks in
+ *  order. Storing and checking out read and write the file one buffer at
+ *  a time.
+ *
+ *  manifest:  tag | version | varint size | varint count |
+ *             (chunk id[20] | varint length)...
+ *
+ *  @LiZhu
+ */
+class ChunkedBlob implements Serializable, Dumpable {
+    /** Version of the binary encoding. */
+    private static final int VERSION = 1;
+    /** Manifests are stored in their binary encoding, never serialized;
+     *  Serializable only lets ObjectStore cache them with the others. */
+    private static final long serialVersionUID = 1L;
+
+    /** Files larger than this are stored in chunks. */
+    static final long THRESHOLD = Long.getLong("gitlet.chunkThreshold", 16L << 20);
+
+    /** Chunk sizes: no chunk is shorter than MIN_SIZE unless it ends the
+     *  file, or longer than MAX_SIZE, and they average about AVG_SIZE. */
+    private static final int MIN_SIZE = 16 << 10;
+    private static final int AVG_SIZE = 64 << 10;
+    private static final int MAX_SIZE = 256 << 10;
+    /** Cut masks before and after AVG_SIZE: 2 bits more and 2 bits fewer
+     *  than the 16 bits of the average size. */
+    private static final long MASK_S = -1L << (64 - 18);
+    private static final long MASK_L = -1L << (64 - 14);
+    /** Random value added to the hash for each byte value. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c6574L; // "gitlet"
+        for (int i = 0; i < GEAR.length; i++) {
+            /** splitmix64, so the table is the same in every process */
+            seed += 0x9E3779B97F4A7C15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private long size;
+    private List<String> chunks = new ArrayList<>();
+    private List<Integer> lengths = new ArrayList<>();
+
+    private ChunkedBlob() {
+    }
+
+    /** Reads a manifest from its binary encoding IN. */
+    ChunkedBlob(ObjectReader in) {
+        in.readHeader(ObjectCodec.MANIFEST, VERSION);
+        this.size = in.readVarint();
+        for (long n = in.readVarint(); n > 0; n--) {
+            chunks.add(in.readHash());
+            lengths.add((int) in.readVarint());
+        }
+    }
+
+    /** Writes the binary encoding of this manifest to OUT. */
+    void write(ObjectWriter out) {
+        out.writeByte(ObjectCodec.MANIFEST);
+        out.writeByte(VERSION);
+        out.writeVarint(size);
+        out.writeVarint(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            out.writeHash(chunks.get(i));
+            out.writeVarint(lengths.get(i));
+        }
+    }
+
+    /** Returns the ids of the chunks of this blob, in order. */
+    List<String> getChunks() {
+        return chunks;
+    }
+
+    /** Returns true if blob UID is stored in chunks. */
+    static boolean exists(String uid) {
+        return ObjectStore.contains(ObjectStore.MANIFEST, uid);
+    }
+
+    /** Returns the manifest of blob UID. */
+    static ChunkedBlob read(String uid) {
+        return ObjectStore.readObject(ObjectStore.MANIFEST, uid, ChunkedBlob.class);
+    }
+
+    /** Stores the contents of FILE as chunked blob UID, storing only the
+     *  chunks not stored already. */
+    static void store(File file, String uid) {
+        ObjectStore.looseDir(ObjectStore.CHUNK).mkdirs();
+        ObjectStore.looseDir(ObjectStore.MANIFEST).mkdirs();
+        ChunkedBlob manifest = new ChunkedBlob();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            ByteBuffer buf = ByteBuffer.allocate(4 * MAX_SIZE);
+            boolean eof = false;
+            while (true) {
+                /** Keep at least MAX_SIZE bytes ahead, so every cut sees a full chunk */
+                while (!eof && buf.position() < MAX_SIZE) {
+                    eof = in.read(buf) < 0;
+                }
+                buf.flip();
+                if (!buf.hasRemaining()) {
+                    break;
+                }
+                while (buf.remaining() >= MAX_SIZE || (eof && buf.hasRemaining())) {
+                    int len = cut(buf.array(), buf.position(), buf.remaining());
+                    md.update(buf.array(), buf.position(), len);
+                    String id = PackFile.toHex(md.digest());
+                    if (!ObjectStore.contains(ObjectStore.CHUNK, id)) {
+                        File tmp = ObjectStore.tempFile(ObjectStore.CHUNK, id);
+                        Compression.write(tmp, Arrays.copyOfRange(buf.array(), buf.position(),
+                                buf.position() + len));
+                        ObjectStore.install(tmp, ObjectStore.CHUNK, id);
+                    }
+                    manifest.chunks.add(id);
+                    manifest.lengths.add(len);
+                    manifest.size += len;
+                    buf.position(buf.position() + len);
+                }
+                buf.compact();
+            }
+            Trace.count(Trace.Counter.FILES_READ);
+            Trace.count(Trace.Counter.BYTES_READ, in.size());
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectStore.writeObject(ObjectStore.MANIFEST, uid, manifest);
+    }
+
+    /** Returns the length of the chunk starting at OFF in BUF, which holds
+     *  LEN bytes from there: at least MAX_SIZE, or all that is left. */
+    static int cut(byte[] buf, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int n = Math.min(len, MAX_SIZE);
+        int normal = Math.min(n, AVG_SIZE);
+        long h = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            h = (h << 1) + GEAR[buf[off + i] & 0xff];
+            if ((h & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < n; i++) {
+            h = (h << 1) + GEAR[buf[off + i] & 0xff];
+            if ((h & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return n;
+    }
+
+    /** Writes the contents of chunked blob UID to FILE, chunk by chunk. */
+    static void checkout(String uid, File file) {
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            copy(uid, out);
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of chunked blob UID to OUT at its position,
+     *  holding at most one chunk in memory. */
+    static void copy(String uid, FileChannel out) throws IOException {
+        for (String id : read(uid).chunks) {
+            File loose = join(ObjectStore.looseDir(ObjectStore.CHUNK), id);
+            if (loose.isFile()) {
+                Compression.copy(loose, out);
+            } else {
+                ByteBuffer data = ByteBuffer.wrap(ObjectStore.read(ObjectStore.CHUNK, id));
+                Trace.count(Trace.Counter.BYTES_WRITTEN, data.remaining());
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("size: " + size);
+        System.out.println("chunks: " + chunks);
+    }
+}
@@ -1,44 +1,83 @@
 package gitlet;
 
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.TreeMap;
 
 import static gitlet.Utils.sha1;
 
 
 /** Represents a gitlet commit object.
+ *
+ *  The commit time is kept in milliseconds since the epoch, and the date
+ *  shown by log is formatted from it with the local UTC offset. Commits of
+ *  version 1 stored only the date, in local time but always marked -0800;
+ *  their time is read back from it in the local zone.
  *
  *  @LiZhu
  */
 public class Commit implements Serializable, Dumpable {
+    /** Version of the binary encoding. */
+    private static final int VERSION = 2;
+    /** Fixed so that Java-serialized objects from older repositories can
+     *  still be read by migrate. */
+    private static final long serialVersionUID = -6293152836887572267L;
+
     private String UID;
     private String date;
+    private transient long timestamp;
     private String commitMessage;
     private String parentID;
-    private TreeMap<String, String> fileMap; // <filename, UID>
+    private String treeID;
+    private transient TreeMap<String, String> fileMap; // <filename, UID>, read from the tree on demand
     private String secondParent;
-    private boolean split = false;
-    private HashSet<String> branches;
 
-    public Commit(String commitMessage, String parentID, TreeMap<String, String> fileMap) {
-        this.date = new SimpleDateFormat("E MMM dd HH:mm:ss yyyy").format(new Date()) + " -0800";
+    public Commit(String commitMessage, String parentID, String treeID) {
+        this.timestamp = System.currentTimeMillis();
+        this.date = formatDate(timestamp);
         this.commitMessage = commitMessage;
         this.parentID = parentID;
-        this.fileMap = fileMap;
+        this.treeID = treeID;
         this.UID = sha1(this.date + this.commitMessage + this.parentID);
         this.secondParent = null;
-        this.branches = new HashSet<>();
+    }
+
+    /** Reads a commit from its binary encoding IN. */
+    Commit(ObjectReader in) {
+        int version = in.readHeader(ObjectCodec.COMMIT, VERSION);
+        this.UID = in.readHash();
+        this.date = in.readString();
+        this.timestamp = version == 1 ? legacyTime(date) : in.readVarint();
+        this.commitMessage = in.readString();
+        this.parentID = in.readOptionalHash();
+        this.secondParent = in.readOptionalHash();
+        this.treeID = in.readHash();
+    }
+
+    /** Writes the binary encoding of this commit to OUT. */
+    void write(ObjectWriter out) {
+        out.writeByte(ObjectCodec.COMMIT);
+        out.writeByte(VERSION);
+        out.writeHash(UID);
+        out.writeString(date);
+        out.writeVarint(timestamp);
+        out.writeString(commitMessage);
+        out.writeOptionalHash(parentID);
+        out.writeOptionalHash(secondParent);
+        out.writeHash(treeID);
     }
 
     public Commit() {
-        this.date = new SimpleDateFormat("E MMM dd HH:mm:ss yyyy").format(new Date(0)) + " -0800";
+        this.timestamp = 0;
+        this.date = formatDate(timestamp);
         this.commitMessage = "initial commit";
         this.parentID = null;
-        this.fileMap = new TreeMap<>();
+        this.treeID = Tree.EMPTY_UID;
         this.UID = sha1(this.date + this.commitMessage);
     }
 
@@ -50,6 +89,32 @@ public class Commit implements Serializable, Dumpable {
         return date;
     }
 
+    /** Returns the commit time in milliseconds since the epoch. */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** Returns TIME as log shows it, with the local UTC offset. */
+    static String formatDate(long time) {
+        return new SimpleDateFormat("E MMM dd HH:mm:ss yyyy Z").format(new Date(time));
+    }
+
+    /** Returns the time of DATE, as version 1 wrote it: local time followed
+     *  by a fixed offset that is ignored. */
+    static long legacyTime(String date) {
+        try {
+            return new SimpleDateFormat("E MMM dd HH:mm:ss yyyy").parse(date).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /** Sets the time of a Java-serialized commit, which has only its date. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.timestamp = legacyTime(date);
+    }
+
     public String getCommitMessage() {
         return commitMessage;
     }
@@ -58,29 +123,37 @@ public class Commit implements Serializable, Dumpable {
         return parentID;
     }
 
+    public String getTreeID() {
+        return treeID;
+    }
+
+    /** Returns every file in this commit, mapped from its path to its blob UID. */
     public TreeMap<String, String> getFileMap() {
+        if (fileMap == null) {
+            fileMap = Tree.flatten(treeID);
+        }
         return fileMap;
     }
 
     public String getSecondParent() { return secondParent;}
 
-    public boolean isSplit() { return split; }
-
-    public HashSet<String> getBranches() { return branches; }
-
-    public void setSplit(boolean split) { this.split = split; }
-
     public void setSecondParent(String secondParent) { this.secondParent = secondParent; }
 
     public void print() {
-        System.out.println("===");
-        System.out.println("commit " + this.getUID());
+        System.out.print(format(false));
+    }
+
+    /** Returns this commit as log prints it: in full, or as an abbreviated
+     *  id and the message if ONELINE. */
+    public String format(boolean oneline) {
+        if (oneline) {
+            return this.UID.substring(0, 7) + " " + this.commitMessage + "\n";
+        }
+        StringBuilder s = new StringBuilder("===\ncommit ").append(this.UID).append('\n');
         if (this.secondParent != null) {
-            System.out.println("Merge: " + this.parentID.substring(0, 7) + " " + this.secondParent.substring(0, 7));
+            s.append("Merge: ").append(this.parentID, 0, 7).append(' ').append(this.secondParent, 0, 7).append('\n');
         }
-        System.out.println("Date: " + this.getDate());
-        System.out.println(this.getCommitMessage());
-        System.out.println();
+        return s.append("Date: ").append(this.date).append('\n').append(this.commitMessage).append("\n\n").toString();
     }
 
 
@@ -91,8 +164,7 @@ public class Commit implements Serializable, Dumpable {
         System.out.println("parent: "+this.parentID);
         System.out.println("2nd parent: "+this.secondParent);
         System.out.println("hash: "+this.UID);
-        System.out.println("Map Size: "+this.fileMap.size());
-        System.out.println("isSplit: "+ this.isSplit());
+        System.out.println("tree: "+this.treeID);
     }
 
 }
@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static gitlet.Repository.COMMIT_BITMAPS;
+
+/** Reachability bitmaps: for selected commits, the set of commit-graph
+ *  rows reachable from them, stored compressed in COMMIT_BITMAPS.
+ *
+ *  Bitmaps are written by gc for every branch head and for every
+ *  CHECKPOINT-th row, so any commit is a short walk from one. Since rows
+ *  are numbered parents first, the bitmap of a commit is mostly long runs
+ *  of ones, which the EWAH-style encoding stores as single run markers:
+ *
+ *  bitmaps:  "BITM" | version | graph rows | id of last row[20] | count |
+ *            (row | length | encoded bitmap)...
+ *  encoded:  (varint run length | run bit | varint literal count |
+ *            literal words...)...   in 64-bit words
+ *
+ *  The file describes the commit-graph as it was when it was written; if
+ *  the graph has been rebuilt since, the bitmaps are ignored.
+ *
+ *  @LiZhu
+ */
+class CommitBitmaps {
+
+    private static final int MAGIC = 0x4249544d; // "BITM"
+    private static final int VERSION = 1;
+    private static final int ID_BYTES = 20;
+    /** Rows that get a bitmap besides the branch heads: one in this many. */
+    static final int CHECKPOINT = 128;
+
+    /** The bitmaps last loaded, with the length and mtime of their file. */
+    private static CommitBitmaps loaded;
+    private static long loadedLength;
+    private static long loadedModified;
+
+    private final CommitGraph graph;
+    /** Encoded bitmaps by row, decoded on first use. */
+    private final Map<Integer, ByteBuffer> encoded = new HashMap<>();
+    private final Map<Integer, BitSet> decoded = new HashMap<>();
+
+    private CommitBitmaps(CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Returns the bitmaps for GRAPH, which are empty if none have been
+     *  written for its current rows. */
+    static CommitBitmaps get(CommitGraph graph) {
+        if (loaded == null || loaded.graph != graph
+                || COMMIT_BITMAPS.length() != loadedLength || COMMIT_BITMAPS.lastModified() != loadedModified) {
+            loadedLength = COMMIT_BITMAPS.length();
+            loadedModified = COMMIT_BITMAPS.lastModified();
+            loaded = new CommitBitmaps(graph);
+            loaded.load();
+        }
+        return loaded;
+    }
+
+    private void load() {
+        if (!COMMIT_BITMAPS.isFile()) {
+            return;
+        }
+        ByteBuffer buf = Utils.map(COMMIT_BITMAPS);
+        if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+            return;
+        }
+        int rows = buf.getInt();
+        byte[] last = new byte[ID_BYTES];
+        buf.get(last);
+        if (rows > graph.size() || rows == 0 || !graph.id(rows - 1).equals(PackFile.toHex(last))) {
+            return;
+        }
+        for (int n = buf.getInt(); n > 0; n--) {
+            int row = buf.getInt();
+            int length = buf.getInt();
+            encoded.put(row, buf.slice(buf.position(), length));
+            buf.position(buf.position() + length);
+        }
+    }
+
+    /** Returns the stored bitmap of ROW, or null if it has none. */
+    BitSet bitmap(int row) {
+        BitSet b = decoded.get(row);
+        if (b == null && encoded.containsKey(row)) {
+            b = decode(encoded.get(row).duplicate());
+            decoded.put(row, b);
+        }
+        return b;
+    }
+
+    /** Returns the rows of every commit reachable from ROW, ROW included.
+     *  The walk stops at each commit that has a bitmap and takes its bits. */
+    BitSet reachable(int row) {
+        BitSet result = new BitSet(graph.size());
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(row);
+        while (!stack.isEmpty()) {
+            int r = stack.pop();
+            if (r == CommitGraph.NONE || result.get(r)) {
+                continue;
+            }
+            BitSet b = bitmap(r);
+            if (b != null) {
+                result.or(b);
+                continue;
+            }
+            result.set(r);
+            stack.push(graph.parent(r));
+            stack.push(graph.secondParent(r));
+        }
+        return result;
+    }
+
+    /** Writes bitmaps for the commits at TIPS and at every CHECKPOINT-th
+     *  row of GRAPH, replacing the existing ones. */
+    static void write(CommitGraph graph, Collection<Integer> tips) {
+        int rows = graph.size();
+        if (rows == 0) {
+            return;
+        }
+        TreeSet<Integer> selected = new TreeSet<>(tips);
+        for (int r = CHECKPOINT - 1; r < rows; r += CHECKPOINT) {
+            selected.add(r);
+        }
+        /** Parents come first, so each bitmap builds on the ones before it */
+        CommitBitmaps building = new CommitBitmaps(graph);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(16 + ID_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(rows).put(PackFile.fromHex(graph.id(rows - 1)));
+        header.putInt(selected.size());
+        out.writeBytes(header.array());
+        for (int r : selected) {
+            BitSet b = building.reachable(r);
+            building.decoded.put(r, b);
+            byte[] data = encode(b);
+            out.writeBytes(ByteBuffer.allocate(8).putInt(r).putInt(data.length).array());
+            out.writeBytes(data);
+        }
+        try (LockFile lock = LockFile.acquire(COMMIT_BITMAPS)) {
+            lock.commit(out.toByteArray());
+        }
+    }
+
+    /** Returns the EWAH-style encoding of BITS. */
+    static byte[] encode(BitSet bits) {
+        long[] words = bits.toLongArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < words.length) {
+            long clean = words[i] == -1L ? -1L : 0L;
+            int run = 0;
+            while (i < words.length && (words[i] == 0L || words[i] == -1L) && words[i] == clean) {
+                run++;
+                i++;
+            }
+            int start = i;
+            while (i < words.length && words[i] != 0L && words[i] != -1L) {
+                i++;
+            }
+            Delta.writeVarint(out, run);
+            out.write(clean == -1L ? 1 : 0);
+            Delta.writeVarint(out, i - start);
+            ByteBuffer literals = ByteBuffer.allocate((i - start) * 8);
+            for (int k = start; k < i; k++) {
+                literals.putLong(words[k]);
+            }
+            out.writeBytes(literals.array());
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the bitmap encoded in IN, as written by encode. */
+    static BitSet decode(ByteBuffer in) {
+        long[] words = new long[16];
+        int n = 0;
+        while (in.hasRemaining()) {
+            int run = (int) Delta.readVarint(in);
+            long clean = in.get() == 1 ? -1L : 0L;
+            int literals = (int) Delta.readVarint(in);
+            if (n + run + literals > words.length) {
+                words = Arrays.copyOf(words, Math.max(words.length * 2, n + run + literals));
+            }
+            for (int k = 0; k < run; k++) {
+                words[n++] = clean;
+            }
+            for (int k = 0; k < literals; k++) {
+                words[n++] = in.getLong();
+            }
+        }
+        return BitSet.valueOf(Arrays.copyOf(words, n));
+    }
+}
@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The commit-graph: one fixed-width row per commit, holding its id, the
+ *  rows of its parents, its commit time and its generation number (one
+ *  more than the largest generation of its parents, 1 for a root).
+ *
+ *  commit-graph:  "CGPH" | version | rows...
+ *      row:       id[20] | parent row | second parent row | time | generation
+ *
+ *  Parents always precede their children, so the file is appended to by
+ *  commit and merge. It is memory-mapped, and history walks use only the
+ *  row numbers it stores, without deserializing any commit. Commits are
+ *  looked up by id through a table of the rows sorted by id, built in
+ *  memory on the first lookup.
+ *
+ *  @LiZhu
+ */
+class CommitGraph {
+
+    private static final int MAGIC = 0x43475048; // "CGPH"
+    /** 2 since commit times are read from commits rather than their date. */
+    private static final int VERSION = 2;
+    private static final int HEADER = 8;
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    private static final int PARENT1 = ID_BYTES;
+    private static final int PARENT2 = PARENT1 + 4;
+    private static final int TIME = PARENT2 + 4;
+    private static final int GENERATION = TIME + 8;
+    private static final int ROW = GENERATION + 4;
+    /** Row number stored for a missing parent. */
+    static final int NONE = -1;
+
+    /** The graph of the current repository, loaded on first use. */
+    private static CommitGraph graph;
+
+    private MappedByteBuffer rows;
+    private int count;
+    /** One entry per row, sorted: the first four bytes of the row's id in
+     *  the upper half and the row number in the lower half. Null until
+     *  the first lookup. */
+    private long[] byId;
+
+    private CommitGraph() {
+        map();
+    }
+
+    /** Returns the commit-graph of the repository, writing it from the
+     *  commit objects if it does not exist yet. A graph mapped earlier is
+     *  reused while the file keeps its size, which lets the daemon see
+     *  commits made by other processes. */
+    static CommitGraph get() {
+        if (graph != null && COMMIT_GRAPH.length() != graph.rows.capacity()) {
+            graph = null;
+        }
+        if (graph == null) {
+            graph = Trace.timed("commit-graph", CommitGraph::load);
+        }
+        return graph;
+    }
+
+    private static CommitGraph load() {
+        if (!current()) {
+            COMMIT_GRAPH.getParentFile().mkdirs();
+            LockFile lock = LockFile.acquire(COMMIT_GRAPH);
+            try (lock) {
+                /** Another process may have written it while we waited */
+                if (!current()) {
+                    rebuild(lock);
+                }
+            }
+        }
+        return new CommitGraph();
+    }
+
+    /** Returns whether the commit-graph file exists in this version. */
+    private static boolean current() {
+        return COMMIT_GRAPH.isFile() && version() == VERSION;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /** Returns the row of commit ID, or NONE, by binary search of the
+     *  sorted ids. Rows sharing the first four bytes of ID are compared in
+     *  full. */
+    int find(String id) {
+        byte[] raw = PackFile.fromHex(id);
+        long[] sorted = byId();
+        long prefix = prefix(raw);
+        int i = Arrays.binarySearch(sorted, prefix << 32);
+        for (i = i < 0 ? -i - 1 : i; i < sorted.length && sorted[i] >>> 32 == prefix; i++) {
+            if (idMatches((int) sorted[i], raw)) {
+                return (int) sorted[i];
+            }
+        }
+        return NONE;
+    }
+
+    private long[] byId() {
+        if (byId == null) {
+            long[] sorted = new long[count];
+            byte[] raw = new byte[4];
+            for (int r = 0; r < count; r++) {
+                rows.get(HEADER + r * ROW, raw);
+                sorted[r] = prefix(raw) << 32 | r;
+            }
+            Arrays.sort(sorted);
+            byId = sorted;
+        }
+        return byId;
+    }
+
+    /** Returns the first four bytes of id RAW as an unsigned number. */
+    private static long prefix(byte[] raw) {
+        return (raw[0] & 0xffL) << 24 | (raw[1] & 0xff) << 16 | (raw[2] & 0xff) << 8 | (raw[3] & 0xff);
+    }
+
+    /** Returns the row of commit ID, failing if it is not in the graph. */
+    int row(String id) {
+        int r = find(id);
+        if (r == NONE) {
+            throw new IllegalArgumentException("commit " + id + " not in commit-graph");
+        }
+        return r;
+    }
+
+    String id(int row) {
+        byte[] raw = new byte[ID_BYTES];
+        rows.get(HEADER + row * ROW, raw);
+        return PackFile.toHex(raw);
+    }
+
+    int parent(int row) {
+        return rows.getInt(HEADER + row * ROW + PARENT1);
+    }
+
+    int secondParent(int row) {
+        return rows.getInt(HEADER + row * ROW + PARENT2);
+    }
+
+    long time(int row) {
+        return rows.getLong(HEADER + row * ROW + TIME);
+    }
+
+    int generation(int row) {
+        return rows.getInt(HEADER + row * ROW + GENERATION);
+    }
+
+    /** Returns true if the commit at row ANCESTOR is reachable from the
+     *  commit at row DESCENDANT. Commits with a generation lower than
+     *  ANCESTOR's cannot lead to it and are not explored, and a commit with
+     *  a reachability bitmap answers for all of its history. */
+    boolean isAncestor(int ancestor, int descendant) {
+        CommitBitmaps bitmaps = CommitBitmaps.get(this);
+        int minGen = generation(ancestor);
+        boolean[] seen = new boolean[count];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(descendant);
+        while (!queue.isEmpty()) {
+            int r = queue.poll();
+            if (r == ancestor) {
+                return true;
+            }
+            if (r == NONE || seen[r] || generation(r) <= minGen) {
+                continue;
+            }
+            seen[r] = true;
+            BitSet b = bitmaps.bitmap(r);
+            if (b != null) {
+                if (b.get(ancestor)) {
+                    return true;
+                }
+                continue;
+            }
+            queue.add(parent(r));
+            queue.add(secondParent(r));
+        }
+        return false;
+    }
+
+    /** Appends COMMIT, whose parents must already be in the graph, while
+     *  holding LOCK on the commit-graph. */
+    void add(Commit commit, LockFile lock) {
+        if (find(commit.getUID()) != NONE) {
+            return;
+        }
+        int p1 = commit.getParentID() == null ? NONE : find(commit.getParentID());
+        int p2 = commit.getSecondParent() == null ? NONE : find(commit.getSecondParent());
+        if ((commit.getParentID() != null && p1 == NONE)
+                || (commit.getSecondParent() != null && p2 == NONE)) {
+            /** The graph is stale: recreate it, new commit included */
+            rebuild(lock);
+            map();
+            byId = null;
+            return;
+        }
+        int gen = 1 + Math.max(p1 == NONE ? 0 : generation(p1), p2 == NONE ? 0 : generation(p2));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeRow(out, commit.getUID(), p1, p2, commit.getTimestamp(), gen);
+        try (OutputStream file = Files.newOutputStream(COMMIT_GRAPH.toPath(), StandardOpenOption.APPEND)) {
+            out.writeTo(file);
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+            Trace.count(Trace.Counter.BYTES_WRITTEN, out.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+        if (byId != null) {
+            /** Insert the new row in place rather than sort them all again */
+            long key = prefix(PackFile.fromHex(commit.getUID())) << 32 | (count - 1);
+            int i = -Arrays.binarySearch(byId, key) - 1;
+            long[] sorted = new long[byId.length + 1];
+            System.arraycopy(byId, 0, sorted, 0, i);
+            sorted[i] = key;
+            System.arraycopy(byId, i, sorted, i + 1, byId.length - i);
+            byId = sorted;
+        }
+    }
+
+    /** Writes the commit-graph from scratch out of all commit objects,
+     *  through LOCK, the caller's lock on it, which this releases. */
+    static void rebuild(LockFile lock) {
+        Map<String, Commit> commits = new HashMap<>();
+        for (String id : ObjectStore.list(ObjectStore.COMMIT)) {
+            commits.put(id, ObjectStore.readObject(ObjectStore.COMMIT, id, Commit.class));
+        }
+        /** Order commits so that parents come first */
+        List<Commit> order = new ArrayList<>();
+        Map<String, Integer> rowOf = new HashMap<>();
+        for (Commit c : commits.values()) {
+            ArrayDeque<Commit> stack = new ArrayDeque<>();
+            stack.push(c);
+            while (!stack.isEmpty()) {
+                Commit top = stack.peek();
+                if (rowOf.containsKey(top.getUID())) {
+                    stack.pop();
+                    continue;
+                }
+                boolean ready = true;
+                for (String p : new String[] {top.getParentID(), top.getSecondParent()}) {
+                    if (p != null && commits.containsKey(p) && !rowOf.containsKey(p)) {
+                        stack.push(commits.get(p));
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    rowOf.put(top.getUID(), order.size());
+                    order.add(top);
+                }
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, MAGIC);
+        writeInt(out, VERSION);
+        int[] gens = new int[order.size()];
+        for (int r = 0; r < order.size(); r++) {
+            Commit c = order.get(r);
+            int p1 = rowOf.getOrDefault(c.getParentID(), NONE);
+            int p2 = rowOf.getOrDefault(c.getSecondParent(), NONE);
+            gens[r] = 1 + Math.max(p1 == NONE ? 0 : gens[p1], p2 == NONE ? 0 : gens[p2]);
+            writeRow(out, c.getUID(), p1, p2, c.getTimestamp(), gens[r]);
+        }
+        lock.commit(out.toByteArray());
+        /** Bitmaps are numbered by row, and rows may have moved */
+        COMMIT_BITMAPS.delete();
+    }
+
+    /** Returns the version of the commit-graph file. */
+    private static int version() {
+        byte[] header = new byte[HEADER];
+        try (InputStream in = new FileInputStream(COMMIT_GRAPH)) {
+            in.readNBytes(header, 0, HEADER);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ByteBuffer.wrap(header).getInt(4);
+    }
+
+    private void map() {
+        rows = Utils.map(COMMIT_GRAPH);
+        if (rows.getInt(0) != MAGIC || rows.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad commit-graph");
+        }
+        count = (rows.capacity() - HEADER) / ROW;
+    }
+
+    private boolean idMatches(int row, byte[] raw) {
+        int base = HEADER + row * ROW;
+        for (int k = ID_BYTES - 1; k >= 0; k--) {
+            if (rows.get(base + k) != raw[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeRow(ByteArrayOutputStream out, String id, int p1, int p2, long time, int gen) {
+        out.writeBytes(PackFile.fromHex(id));
+        writeInt(out, p1);
+        writeInt(out, p2);
+        writeInt(out, (int) (time >>> 32));
+        writeInt(out, (int) time);
+        writeInt(out, gen);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+}
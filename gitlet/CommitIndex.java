@@ -0,0 +1,451 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** A columnar index of commit metadata, one row per commit, kept in
+ *  COMMIT_INDEX_DIR so that find does not deserialize every commit.
+ *
+ *  ids            id[20] per row
+ *  ids-sorted     the ids of the first rows, sorted, for prefix lookups
+ *  parents        parent id[20] | second parent id[20] per row, zero if none
+ *  times          commit time (8 bytes) per row
+ *  msg-offsets    end offset of the row's message in msg-data (8 bytes)
+ *  msg-data       UTF-8 commit messages, back to back
+ *  postings       (token hash, row) pairs sorted by token hash, then row
+ *  postings-tail  (token hash, row) pairs appended since the last merge
+ *  version        the format version, as text; the index is rebuilt when
+ *                 it is missing or older
+ *
+ *  Commit appends a row to every column. Rows past the end of ids-sorted
+ *  and the tail of the posting list are searched linearly, and are merged
+ *  into the sorted files once either grows past TAIL_LIMIT entries.
+ *
+ *  @LiZhu
+ */
+class CommitIndex {
+
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    private static final int TAIL_LIMIT = 4096;
+    private static final File IDS = join(COMMIT_INDEX_DIR, "ids");
+    private static final File SORTED_IDS = join(COMMIT_INDEX_DIR, "ids-sorted");
+    private static final File PARENTS = join(COMMIT_INDEX_DIR, "parents");
+    private static final File TIMES = join(COMMIT_INDEX_DIR, "times");
+    private static final File MSG_OFFSETS = join(COMMIT_INDEX_DIR, "msg-offsets");
+    private static final File MSG_DATA = join(COMMIT_INDEX_DIR, "msg-data");
+    private static final File POSTINGS = join(COMMIT_INDEX_DIR, "postings");
+    private static final File POSTINGS_TAIL = join(COMMIT_INDEX_DIR, "postings-tail");
+    private static final File VERSION_FILE = join(COMMIT_INDEX_DIR, "version");
+    /** 2 since commit times are read from commits rather than their date. */
+    private static final String VERSION = "2";
+
+    /** Message matching modes for queries. */
+    static final int EXACT = 0;
+    static final int SUBSTRING = 1;
+    static final int REGEX = 2;
+
+    /** The index of the current repository, loaded on first use. */
+    private static CommitIndex index;
+
+    private MappedByteBuffer ids;
+    private MappedByteBuffer sortedIds;
+    private MappedByteBuffer times;
+    private MappedByteBuffer msgOffsets;
+    private MappedByteBuffer msgData;
+    private MappedByteBuffer postings;
+    private MappedByteBuffer tail;
+    private int count;
+
+    private CommitIndex() {
+        map();
+    }
+
+    /** Returns the index of the repository, building it from the commit
+     *  objects under the COMMIT_INDEX_DIR lock if it does not exist yet. */
+    static CommitIndex get() {
+        if (index != null && (IDS.length() != index.ids.capacity()
+                || SORTED_IDS.length() != index.sortedIds.capacity()
+                || POSTINGS_TAIL.length() != index.tail.capacity())) {
+            /** Another process appended to or rebuilt the index */
+            index = null;
+        }
+        if (index == null) {
+            if (!exists()) {
+                COMMIT_INDEX_DIR.mkdirs();
+                LockFile lock = LockFile.acquire(COMMIT_INDEX_DIR);
+                try (lock) {
+                    /** Another process may have built it while we waited */
+                    if (!exists()) {
+                        rebuild();
+                    }
+                }
+            }
+            index = new CommitIndex();
+        }
+        return index;
+    }
+
+    /** Records the newly stored COMMIT in the index. The caller holds the
+     *  COMMIT_INDEX_DIR lock, and loaded the index before storing COMMIT,
+     *  so that loading it here never has to build it. */
+    static void append(Commit commit) {
+        get().add(commit);
+    }
+
+    private static boolean exists() {
+        return IDS.isFile() && SORTED_IDS.isFile() && VERSION_FILE.isFile()
+            && readContentsAsString(VERSION_FILE).equals(VERSION);
+    }
+
+    int size() {
+        return count;
+    }
+
+    String id(int row) {
+        byte[] raw = new byte[ID_BYTES];
+        ids.get(row * ID_BYTES, raw);
+        return PackFile.toHex(raw);
+    }
+
+    long time(int row) {
+        return times.getLong(row * 8);
+    }
+
+    String message(int row) {
+        int start = row == 0 ? 0 : (int) msgOffsets.getLong((row - 1) * 8);
+        int end = (int) msgOffsets.getLong(row * 8);
+        byte[] raw = new byte[end - start];
+        msgData.get(start, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the ids of all commits whose id starts with the hexadecimal
+     *  PREFIX, in O(log n) plus the unsorted tail of rows. */
+    List<String> resolve(String prefix) {
+        String p = prefix.toLowerCase();
+        List<String> result = new ArrayList<>();
+        int n = sortedIds.capacity() / ID_BYTES;
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(mid, p) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        byte[] raw = new byte[ID_BYTES];
+        for (int i = lo; i < n && comparePrefix(i, p) == 0; i++) {
+            sortedIds.get(i * ID_BYTES, raw);
+            result.add(PackFile.toHex(raw));
+        }
+        for (int r = n; r < count; r++) {
+            String id = id(r);
+            if (id.startsWith(p)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Compares the first digits of the Ith sorted id with the hex digits
+     *  of PREFIX. */
+    private int comparePrefix(int i, String prefix) {
+        for (int k = 0; k < prefix.length(); k++) {
+            int b = sortedIds.get(i * ID_BYTES + k / 2);
+            int nibble = (k % 2 == 0 ? b >> 4 : b) & 0xf;
+            int cmp = Integer.compare(nibble, Character.digit(prefix.charAt(k), 16));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the ids of commits whose message matches MESSAGE in MODE and
+     *  whose time is in [SINCE, UNTIL], sorted, at most LIMIT of them. */
+    List<String> query(String message, int mode, long since, long until, int limit) {
+        List<String> result = new ArrayList<>();
+        Pattern regex = mode == REGEX ? Pattern.compile(message) : null;
+        for (int row : candidates(message, mode)) {
+            long t = time(row);
+            if (t < since || t > until) {
+                continue;
+            }
+            String m = message(row);
+            boolean match = mode == EXACT ? m.equals(message)
+                    : mode == SUBSTRING ? m.contains(message)
+                    : regex.matcher(m).find();
+            if (match) {
+                result.add(id(row));
+            }
+        }
+        result.sort(null);
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /** Returns the rows that may match MESSAGE: for exact and substring
+     *  searches, the rows holding every token that must appear whole in a
+     *  match. Otherwise, every row. */
+    private int[] candidates(String message, int mode) {
+        List<String> tokens = mode == REGEX ? new ArrayList<>() : tokenize(message);
+        if (mode == SUBSTRING && !tokens.isEmpty()) {
+            /** The first and last tokens may be cut off inside a word */
+            boolean cutStart = Character.isLetterOrDigit(message.charAt(0));
+            boolean cutEnd = Character.isLetterOrDigit(message.charAt(message.length() - 1));
+            tokens = tokens.subList(cutStart ? 1 : 0, Math.max(cutStart ? 1 : 0, tokens.size() - (cutEnd ? 1 : 0)));
+        }
+        if (tokens.isEmpty()) {
+            int[] all = new int[count];
+            for (int r = 0; r < count; r++) {
+                all[r] = r;
+            }
+            return all;
+        }
+        int[] rows = null;
+        for (String t : new LinkedHashSet<>(tokens)) {
+            int[] p = posting(t.hashCode());
+            rows = rows == null ? p : intersect(rows, p);
+        }
+        return rows;
+    }
+
+    /** Returns the sorted rows whose messages contain a token with HASH. */
+    private int[] posting(int hash) {
+        int n = postings.capacity() / 8;
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (postings.getInt(mid * 8) < hash) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Integer> rows = new ArrayList<>();
+        for (int i = lo; i < n && postings.getInt(i * 8) == hash; i++) {
+            rows.add(postings.getInt(i * 8 + 4));
+        }
+        for (int i = 0; i < tail.capacity() / 8; i++) {
+            if (tail.getInt(i * 8) == hash) {
+                rows.add(tail.getInt(i * 8 + 4));
+            }
+        }
+        return rows.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /** Appends a row for COMMIT. */
+    void add(Commit commit) {
+        Rows rows = new Rows(count, count == 0 ? 0 : msgOffsets.getLong((count - 1) * 8));
+        rows.add(commit);
+        rows.append();
+        if (tail.capacity() / 8 + rows.postings.size() / 8 > TAIL_LIMIT
+                || count + 1 - sortedIds.capacity() / ID_BYTES > TAIL_LIMIT) {
+            mergeTails();
+        }
+        map();
+    }
+
+    /** Writes the index from scratch out of all commit objects. The caller
+     *  holds the COMMIT_INDEX_DIR lock. Each column is written to a
+     *  temporary file and renamed into place, and the version file is
+     *  removed meanwhile, so that readers wait for the lock rather than
+     *  map columns of both the old and the new index. */
+    static void rebuild() {
+        COMMIT_INDEX_DIR.mkdirs();
+        VERSION_FILE.delete();
+        Rows rows = new Rows(0, 0);
+        for (String id : ObjectStore.list(ObjectStore.COMMIT)) {
+            rows.add(ObjectStore.readObject(ObjectStore.COMMIT, id, Commit.class));
+        }
+        replace(PARENTS, rows.parents.toByteArray());
+        replace(TIMES, rows.times.toByteArray());
+        replace(MSG_DATA, rows.messages.toByteArray());
+        replace(MSG_OFFSETS, rows.offsets.toByteArray());
+        replace(POSTINGS, sortPostings(rows.postings.toByteArray()));
+        replace(POSTINGS_TAIL, new byte[0]);
+        replace(SORTED_IDS, sortIds(rows.ids.toByteArray()));
+        replace(IDS, rows.ids.toByteArray());
+        replace(VERSION_FILE, VERSION.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Rewrites ids-sorted with every id, and merges the tail of the
+     *  posting list into the sorted postings. The tail is emptied only
+     *  once the merged postings are in place, so a reader in between may
+     *  see an entry twice but never misses one. */
+    private static void mergeTails() {
+        replace(SORTED_IDS, sortIds(readContents(IDS)));
+        ByteBuffer all = ByteBuffer.allocate((int) (POSTINGS.length() + POSTINGS_TAIL.length()));
+        all.put(readContents(POSTINGS)).put(readContents(POSTINGS_TAIL));
+        replace(POSTINGS, sortPostings(all.array()));
+        replace(POSTINGS_TAIL, new byte[0]);
+    }
+
+    /** Returns the ids in RAW, ID_BYTES each, in sorted order. */
+    private static byte[] sortIds(byte[] raw) {
+        String[] hex = new String[raw.length / ID_BYTES];
+        for (int i = 0; i < hex.length; i++) {
+            hex[i] = PackFile.toHex(Arrays.copyOfRange(raw, i * ID_BYTES, (i + 1) * ID_BYTES));
+        }
+        Arrays.sort(hex);
+        ByteArrayOutputStream sorted = new ByteArrayOutputStream(raw.length);
+        for (String id : hex) {
+            sorted.writeBytes(PackFile.fromHex(id));
+        }
+        return sorted.toByteArray();
+    }
+
+    /** Returns the (token hash, row) pairs in RAW sorted by token hash,
+     *  then row. */
+    private static byte[] sortPostings(byte[] raw) {
+        ByteBuffer all = ByteBuffer.wrap(raw);
+        long[] pairs = new long[raw.length / 8];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = ((long) all.getInt() << 32) | (all.getInt() & 0xffffffffL);
+        }
+        Arrays.sort(pairs);
+        ByteBuffer out = ByteBuffer.allocate(pairs.length * 8);
+        for (long p : pairs) {
+            out.putLong(p);
+        }
+        return out.array();
+    }
+
+    /** Replaces the contents of index file FILE with CONTENTS by renaming
+     *  a new temporary file over it. */
+    private static void replace(File file, byte[] contents) {
+        try {
+            File tmp = Files.createTempFile(COMMIT_INDEX_DIR.toPath(), file.getName(), ".tmp").toFile();
+            writeContents(tmp, contents);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Splits MESSAGE into lower-case words. */
+    static List<String> tokenize(String message) {
+        List<String> tokens = new ArrayList<>();
+        for (String t : message.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!t.isEmpty()) {
+                tokens.add(t);
+            }
+        }
+        return tokens;
+    }
+
+    /** Parses a --since or --until DATE given as yyyy-MM-dd, optionally
+     *  followed by HH:mm:ss, in local time like the dates log shows. */
+    static long parseDate(String date) {
+        try {
+            String pattern = date.length() > 10 ? "yyyy-MM-dd HH:mm:ss" : "yyyy-MM-dd";
+            return new SimpleDateFormat(pattern).parse(date).getTime();
+        } catch (ParseException excp) {
+            throw error("Invalid date: %s", date);
+        }
+    }
+
+    private void map() {
+        ids = Utils.map(IDS);
+        sortedIds = Utils.map(SORTED_IDS);
+        times = Utils.map(TIMES);
+        msgOffsets = Utils.map(MSG_OFFSETS);
+        msgData = Utils.map(MSG_DATA);
+        postings = Utils.map(POSTINGS);
+        tail = Utils.map(POSTINGS_TAIL);
+        count = ids.capacity() / ID_BYTES;
+    }
+
+    /** Column data for new rows, appended to the index files together. */
+    private static class Rows {
+        final ByteArrayOutputStream ids = new ByteArrayOutputStream();
+        final ByteArrayOutputStream parents = new ByteArrayOutputStream();
+        final ByteArrayOutputStream times = new ByteArrayOutputStream();
+        final ByteArrayOutputStream offsets = new ByteArrayOutputStream();
+        final ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        final ByteArrayOutputStream postings = new ByteArrayOutputStream();
+        int row;
+        long msgEnd;
+
+        Rows(int row, long msgEnd) {
+            this.row = row;
+            this.msgEnd = msgEnd;
+        }
+
+        void add(Commit c) {
+            ids.writeBytes(PackFile.fromHex(c.getUID()));
+            parents.writeBytes(c.getParentID() == null ? new byte[ID_BYTES] : PackFile.fromHex(c.getParentID()));
+            parents.writeBytes(c.getSecondParent() == null ? new byte[ID_BYTES] : PackFile.fromHex(c.getSecondParent()));
+            times.writeBytes(ByteBuffer.allocate(8).putLong(c.getTimestamp()).array());
+            byte[] msg = c.getCommitMessage().getBytes(StandardCharsets.UTF_8);
+            messages.writeBytes(msg);
+            msgEnd += msg.length;
+            offsets.writeBytes(ByteBuffer.allocate(8).putLong(msgEnd).array());
+            Set<String> tokens = new LinkedHashSet<>(tokenize(c.getCommitMessage()));
+            for (String t : tokens) {
+                postings.writeBytes(ByteBuffer.allocate(8).putInt(t.hashCode()).putInt(row).array());
+            }
+            row++;
+        }
+
+        /** Appends the new rows. The ids go last, since their count is the
+         *  number of rows in the index. */
+        void append() {
+            append(PARENTS, parents);
+            append(TIMES, times);
+            append(MSG_DATA, messages);
+            append(MSG_OFFSETS, offsets);
+            append(POSTINGS_TAIL, postings);
+            append(IDS, ids);
+        }
+
+        private static void append(File file, ByteArrayOutputStream data) {
+            try {
+                Files.write(file.toPath(), data.toByteArray(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                Trace.count(Trace.Counter.FILES_WRITTEN);
+                Trace.count(Trace.Counter.BYTES_WRITTEN, data.size());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** The compression of loose objects.
+ *
+ *  Every loose object is written with a header naming the codec of the
+ *  bytes after it:
+ *
+ *  object:  magic[4] = 00 'g' 'l' 'z' | codec | data
+ *
+ *  Deflate is the default; the faster LzCodec is chosen by setting the
+ *  repository's compression config to lz. Content that a codec shrinks by
+ *  less than a tenth, which is mostly content compressed already, is
+ *  stored as is under codec none, and a blob stored that way is still
+ *  copied by the kernel on checkout. Files written before compression have
+ *  no header and are read as they are. Decompression always streams, so
+ *  checking out a large blob needs only a buffer of memory.
+ *
+ *  @LiZhu
+ */
+class Compression {
+
+    /** Codecs, by the id recorded in each object. */
+    enum Codec {
+        NONE(0, "none") {
+            @Override
+            OutputStream compressor(OutputStream out) {
+                return out;
+            }
+
+            @Override
+            InputStream decompressor(InputStream in) {
+                return in;
+            }
+        },
+        DEFLATE(1, "deflate") {
+            @Override
+            OutputStream compressor(OutputStream out) {
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+                return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            InputStream decompressor(InputStream in) {
+                Inflater inflater = new Inflater();
+                return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            }
+        },
+        LZ(2, "lz") {
+            @Override
+            OutputStream compressor(OutputStream out) {
+                return new LzCodec.Output(out);
+            }
+
+            @Override
+            InputStream decompressor(InputStream in) {
+                return new LzCodec.Input(in);
+            }
+        };
+
+        final int id;
+        final String name;
+
+        Codec(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        /** Returns a stream compressing what is written to it onto OUT,
+         *  which closing it closes. */
+        abstract OutputStream compressor(OutputStream out);
+
+        /** Returns a stream of the data compressed in IN. */
+        abstract InputStream decompressor(InputStream in);
+
+        /** Returns DATA compressed. */
+        byte[] compress(byte[] data, int off, int len) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(len / 2 + 64);
+            try (OutputStream out = compressor(bytes)) {
+                out.write(data, off, len);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return bytes.toByteArray();
+        }
+
+        /** Returns the LEN bytes at OFF in DATA decompressed. */
+        byte[] decompress(byte[] data, int off, int len) {
+            try (InputStream in = decompressor(new ByteArrayInputStream(data, off, len))) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        static Codec byId(int id) {
+            for (Codec c : values()) {
+                if (c.id == id) {
+                    return c;
+                }
+            }
+            throw new IllegalArgumentException("unknown codec " + id);
+        }
+
+        static Codec byName(String name) {
+            for (Codec c : values()) {
+                if (c.name.equals(name)) {
+                    return c;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final byte[] MAGIC = {0, 'g', 'l', 'z'};
+    /** Length of the header: MAGIC and the codec id. */
+    static final int HEADER = MAGIC.length + 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Objects smaller than this are never compressed. */
+    private static final int MIN_SIZE = 64;
+    /** Large files are compressed only if this much of their start is. */
+    private static final int SAMPLE_SIZE = 1 << 16;
+    /** stats tries each codec on up to SAMPLE_OBJECT bytes from the start
+     *  of each loose object, and SAMPLE_LIMIT bytes in all. */
+    private static final int SAMPLE_OBJECT = 1 << 20;
+    private static final long SAMPLE_LIMIT = 32 << 20;
+
+    /** Returns the codec set with the compression config. */
+    static Codec configured() {
+        String name = Config.get("compression", Codec.DEFLATE.name);
+        Codec codec = Codec.byName(name);
+        if (codec == null) {
+            exitWithError("Unknown compression codec " + name + ".");
+        }
+        return codec;
+    }
+
+    /** Returns true if compressing LEN bytes to PACKED bytes saves enough
+     *  to be worth decompressing them again. */
+    private static boolean worthwhile(int len, int packed) {
+        return packed < len - len / 10;
+    }
+
+    /** Returns DATA as stored in a loose object: a header, and the data
+     *  compressed with the configured codec if that makes it smaller. */
+    static byte[] encode(byte[] data) {
+        Codec codec = data.length < MIN_SIZE ? Codec.NONE : configured();
+        byte[] packed = codec == Codec.NONE ? data : codec.compress(data, 0, data.length);
+        if (!worthwhile(data.length, packed.length)) {
+            codec = Codec.NONE;
+            packed = data;
+        }
+        byte[] result = Arrays.copyOf(MAGIC, HEADER + packed.length);
+        result[MAGIC.length] = (byte) codec.id;
+        System.arraycopy(packed, 0, result, HEADER, packed.length);
+        return result;
+    }
+
+    /** Returns the contents held by STORED, the bytes of a loose object. */
+    static byte[] decode(byte[] stored) {
+        Codec codec = codecOf(stored);
+        if (codec == null) {
+            return stored;
+        }
+        if (codec == Codec.NONE) {
+            return Arrays.copyOfRange(stored, HEADER, stored.length);
+        }
+        return codec.decompress(stored, HEADER, stored.length - HEADER);
+    }
+
+    /** Returns the codec named in the header of STORED, or null if it was
+     *  written without one. */
+    private static Codec codecOf(byte[] stored) {
+        if (stored.length < HEADER || !Arrays.equals(stored, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            return null;
+        }
+        return Codec.byId(stored[MAGIC.length]);
+    }
+
+    /** Returns the codec of loose object FILE, or null if it has no
+     *  header. */
+    static Codec codecOf(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return codecOf(in.readNBytes(HEADER));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the position in loose object FILE where its contents start
+     *  uncompressed, or -1 if they are compressed. */
+    static long rawOffset(File file) {
+        Codec codec = codecOf(file);
+        return codec == null ? 0 : codec == Codec.NONE ? HEADER : -1;
+    }
+
+    /** Returns the contents of loose object FILE. */
+    static byte[] read(File file) {
+        return decode(readContents(file));
+    }
+
+    /** Writes DATA to FILE as a loose object. */
+    static void write(File file, byte[] data) {
+        writeContents(file, encode(data));
+    }
+
+    /** Writes the contents of FROM to loose object TO, a buffer at a time.
+     *  Whether to compress is decided on a sample from the start. */
+    static void store(File from, File to) {
+        try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(to.toPath(), StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer sample = ByteBuffer.allocate((int) Math.min(in.size(), SAMPLE_SIZE));
+            readFully(in, sample);
+            Codec codec = sample.position() < MIN_SIZE ? Codec.NONE : configured();
+            if (codec != Codec.NONE
+                    && !worthwhile(sample.position(), codec.compress(sample.array(), 0, sample.position()).length)) {
+                codec = Codec.NONE;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER).put(MAGIC).put((byte) codec.id).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            long size = in.size();
+            Trace.count(Trace.Counter.FILES_READ);
+            Trace.count(Trace.Counter.BYTES_READ, size);
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+            if (codec == Codec.NONE) {
+                for (long pos = 0; pos < size; ) {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+                Trace.count(Trace.Counter.BYTES_WRITTEN, out.size());
+                return;
+            }
+            try (OutputStream z = codec.compressor(new BufferedOutputStream(Channels.newOutputStream(out),
+                    BUFFER_SIZE))) {
+                ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+                for (long pos = 0; in.read(buf, pos) > 0; pos += buf.position(), buf.clear()) {
+                    z.write(buf.array(), 0, buf.position());
+                }
+            }
+            /** Closing the compressor closed OUT */
+            Trace.count(Trace.Counter.BYTES_WRITTEN, to.length());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Writes the contents of loose object FROM to OUT at its position,
+     *  letting the kernel copy them when they are not compressed. */
+    static void copy(File from, FileChannel out) throws IOException {
+        try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(in.size(), HEADER));
+            readFully(in, header);
+            Codec codec = codecOf(header.array());
+            long size = in.size();
+            Trace.count(Trace.Counter.FILES_READ);
+            Trace.count(Trace.Counter.BYTES_READ, size);
+            if (codec == null || codec == Codec.NONE) {
+                long start = codec == null ? 0 : HEADER;
+                for (long pos = start; pos < size; ) {
+                    pos += in.transferTo(pos, size - pos, out);
+                }
+                Trace.count(Trace.Counter.BYTES_WRITTEN, size - start);
+                return;
+            }
+            try (InputStream z = codec.decompressor(Channels.newInputStream(in.position(HEADER)))) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                for (int n; (n = z.read(buf)) > 0; ) {
+                    Trace.count(Trace.Counter.BYTES_WRITTEN, n);
+                    ByteBuffer b = ByteBuffer.wrap(buf, 0, n);
+                    while (b.hasRemaining()) {
+                        out.write(b);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns a stream of the contents of loose object FILE. */
+    static InputStream open(File file) throws IOException {
+        Trace.count(Trace.Counter.FILES_READ);
+        Trace.count(Trace.Counter.BYTES_READ, file.length());
+        InputStream in = new FileInputStream(file);
+        byte[] header = in.readNBytes(HEADER);
+        Codec codec = codecOf(header);
+        if (codec == null) {
+            return new SequenceInputStream(new ByteArrayInputStream(header), in);
+        }
+        return codec.decompressor(new BufferedInputStream(in, BUFFER_SIZE));
+    }
+
+    /** Fills BUF from the start of IN, which holds at least as many bytes. */
+    private static void readFully(FileChannel in, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining() && in.read(buf, buf.position()) >= 0) {
+            /** positional reads, which leave the channel where it was */
+        }
+    }
+
+    /** Replaces the contents of TO with those of loose object FROM. */
+    static void checkout(File from, File to) {
+        try (FileChannel out = FileChannel.open(to.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            copy(from, out);
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Per-codec totals over the loose objects. */
+    private static class Totals {
+        private int objects;
+        private long raw;
+        private long stored;
+        private long nanos;
+    }
+
+    /** Prints, for each codec, the loose objects stored with it and how fast
+     *  they read back, then how each codec does on a sample of them. */
+    static void printStats() {
+        Totals[] totals = new Totals[Codec.values().length + 1];
+        List<byte[]> sample = new ArrayList<>();
+        long sampleBytes = 0;
+        byte[] buf = new byte[BUFFER_SIZE];
+        for (int type : ObjectStore.TYPES) {
+            for (String id : ObjectStore.looseIds(type)) {
+                File f = join(ObjectStore.looseDir(type), id);
+                Codec codec = codecOf(f);
+                int row = codec == null ? totals.length - 1 : codec.ordinal();
+                if (totals[row] == null) {
+                    totals[row] = new Totals();
+                }
+                Totals t = totals[row];
+                long start = System.nanoTime();
+                try (InputStream in = open(f)) {
+                    /** The start of each object goes into the sample, until it is full */
+                    byte[] head = in.readNBytes((int) Math.min(SAMPLE_OBJECT, SAMPLE_LIMIT - sampleBytes));
+                    if (head.length > 0) {
+                        sample.add(head);
+                        sampleBytes += head.length;
+                    }
+                    t.raw += head.length;
+                    for (int n; (n = in.read(buf)) > 0; ) {
+                        t.raw += n;
+                    }
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+                t.nanos += System.nanoTime() - start;
+                t.objects++;
+                t.stored += f.length();
+            }
+        }
+        message("Loose objects by codec:");
+        message("%-10s %8s %12s %12s %6s %10s", "codec", "objects", "raw bytes", "stored bytes", "ratio",
+                "read MB/s");
+        for (int row = 0; row < totals.length; row++) {
+            Totals t = totals[row];
+            if (t != null) {
+                message("%-10s %8d %12d %12d %6.2f %10.1f", row < Codec.values().length
+                        ? Codec.values()[row].name : "untagged", t.objects, t.raw, t.stored,
+                        ratio(t.stored, t.raw), throughput(t.raw, t.nanos));
+            }
+        }
+        int packed = 0;
+        long packBytes = 0;
+        for (PackFile p : ObjectStore.packs()) {
+            packed += p.size();
+            packBytes += p.getPackFile().length();
+        }
+        message("Packed: %d objects in %d packs, %d bytes.", packed, ObjectStore.packs().size(), packBytes);
+        if (sample.isEmpty()) {
+            return;
+        }
+        System.out.println();
+        message("Codecs on a sample of %d bytes of loose objects:", sampleBytes);
+        message("%-10s %6s %14s %16s", "codec", "ratio", "compress MB/s", "decompress MB/s");
+        for (Codec codec : Codec.values()) {
+            if (codec == Codec.NONE) {
+                continue;
+            }
+            long packedBytes = 0;
+            long compressNanos = 0;
+            long decompressNanos = 0;
+            /** The first passes only warm up the JIT compiler */
+            for (int pass = 0; pass < 3; pass++) {
+                packedBytes = 0;
+                compressNanos = 0;
+                decompressNanos = 0;
+                for (byte[] data : sample) {
+                    long start = System.nanoTime();
+                    byte[] z = codec.compress(data, 0, data.length);
+                    long mid = System.nanoTime();
+                    codec.decompress(z, 0, z.length);
+                    decompressNanos += System.nanoTime() - mid;
+                    compressNanos += mid - start;
+                    packedBytes += z.length;
+                }
+            }
+            message("%-10s %6.2f %14.1f %16.1f", codec.name, ratio(packedBytes, sampleBytes),
+                    throughput(sampleBytes, compressNanos), throughput(sampleBytes, decompressNanos));
+        }
+    }
+
+    private static double ratio(long stored, long raw) {
+        return raw == 0 ? 1 : (double) stored / raw;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes / (nanos / 1e9) / (1 << 20);
+    }
+}
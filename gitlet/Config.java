@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import static gitlet.Repository.CONFIG;
+
+/** Settings of one repository, kept in CONFIG as key=value lines and set
+ *  with the config command. A system property gitlet.KEY overrides the
+ *  file, so a single command can run with other settings.
+ *
+ *  @LiZhu
+ */
+class Config {
+
+    /** The settings read from CONFIG, loaded on first use and reloaded
+     *  whenever the file changes, since a daemon outlives any one edit. */
+    private static Properties loaded;
+    private static long loadedModified;
+
+    /** Returns the value of KEY, or DEFAULT if it is not set. */
+    static String get(String key, String def) {
+        String value = System.getProperty("gitlet." + key);
+        if (value != null) {
+            return value;
+        }
+        return load().getProperty(key, def);
+    }
+
+    /** Sets KEY to VALUE in CONFIG, or removes it if VALUE is null. The
+     *  file is read again and replaced under its lock, so that concurrent
+     *  edits are neither lost nor seen half written. */
+    static synchronized void set(String key, String value) {
+        try (LockFile lock = LockFile.acquire(CONFIG)) {
+            Properties props = read();
+            if (value == null) {
+                props.remove(key);
+            } else {
+                props.setProperty(key, value);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            props.store(out, null);
+            lock.commit(out.toByteArray());
+            loaded = null;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static synchronized Properties load() {
+        if (loaded == null || CONFIG.lastModified() != loadedModified) {
+            loadedModified = CONFIG.lastModified();
+            loaded = read();
+        }
+        return loaded;
+    }
+
+    private static Properties read() {
+        Properties props = new Properties();
+        if (CONFIG.isFile()) {
+            try (InputStream in = new FileInputStream(CONFIG)) {
+                props.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return props;
+    }
+}
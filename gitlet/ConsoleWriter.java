@@ -0,0 +1,56 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/** Buffers a command's output and writes it to System.out in large blocks,
+ *  noticing when the reader has gone away, as "log | head" does, so that
+ *  the command can stop instead of producing output nobody reads.
+ *
+ *  Writes go through whatever System.out is when they are flushed, so
+ *  output still reaches the client when the daemon runs the command.
+ *
+ *  @LiZhu
+ */
+class ConsoleWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 1024);
+    private boolean closed;
+
+    /** Appends S to the output. */
+    ConsoleWriter print(String s) {
+        buffer.append(s);
+        if (buffer.length() >= BUFFER_SIZE) {
+            flush();
+        }
+        return this;
+    }
+
+    ConsoleWriter println(String s) {
+        return print(s).print("\n");
+    }
+
+    /** Returns true once the output can no longer be written, after which
+     *  everything printed is dropped. */
+    boolean closed() {
+        return closed;
+    }
+
+    void flush() {
+        if (!closed && buffer.length() > 0) {
+            PrintStream out = System.out;
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+            /** PrintStream never throws: a broken pipe only shows here */
+            closed = out.checkError();
+        }
+        buffer.setLength(0);
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
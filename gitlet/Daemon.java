@@ -0,0 +1,145 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** A long-running server that executes gitlet commands for one repository,
+ *  keeping the commit-graph, commit index, packs, index and decoded
+ *  objects warm between commands.
+ *
+ *  The daemon listens on the Unix domain socket .gitlet/daemon.sock and
+ *  serves one command at a time. A request is the command's arguments,
+ *  each followed by a NUL byte; the reply is the command's output, streamed
+ *  as the command writes it and ending when the daemon closes the
+ *  connection. For example:
+ *
+ *      printf 'status\0' | nc -U -N .gitlet/daemon.sock
+ *
+ *  @LiZhu
+ */
+class Daemon {
+
+    static final File SOCKET = join(GITLET_DIR, "daemon.sock");
+    /** Output is sent to the client whenever this much has been written. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Serves commands until a "daemon stop" request arrives. */
+    static void serve() throws IOException {
+        if (SOCKET.exists()) {
+            if (connect() != null) {
+                exitWithError("A daemon is already running.");
+            }
+            SOCKET.delete();
+        }
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        Trace.serving();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET.toPath()));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = readRequest(client);
+                    if (args.length == 2 && args[0].equals("daemon") && args[1].equals("stop")) {
+                        running = false;
+                    } else {
+                        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(client), BUFFER_SIZE);
+                        System.setOut(new PrintStream(out, false, StandardCharsets.UTF_8));
+                        System.setErr(System.out);
+                        try {
+                            Main.run(args);
+                        } catch (GitletException e) {
+                            if (!e.getMessage().isEmpty()) {
+                                System.out.println(e.getMessage());
+                            }
+                        } catch (RuntimeException e) {
+                            e.printStackTrace(System.out);
+                        } finally {
+                            LockFile.releaseAll();
+                            System.out.flush();
+                            System.setOut(stdout);
+                            System.setErr(stderr);
+                        }
+                    }
+                } catch (IOException e) {
+                    // The client went away; keep serving the others
+                }
+            }
+        } finally {
+            SOCKET.delete();
+        }
+    }
+
+    /** Runs ARGS in the daemon serving this repository and copies its
+     *  output to System.out. Returns false, having done nothing, if no
+     *  daemon is reachable or GITLET_NO_DAEMON is set. */
+    static boolean forward(String[] args) throws IOException {
+        if (args.length == 0 || args[0].equals("init") || args[0].equals("daemon") && args.length == 1
+                || System.getenv("GITLET_NO_DAEMON") != null || !SOCKET.exists()) {
+            return false;
+        }
+        SocketChannel ch = connect();
+        if (ch == null) {
+            return false;
+        }
+        String trace = Trace.option(System.getenv("GITLET_TRACE"));
+        if (trace != null && !args[0].startsWith("--trace")) {
+            /** The daemon does not see this process's environment */
+            String[] traced = new String[args.length + 1];
+            traced[0] = trace;
+            System.arraycopy(args, 0, traced, 1, args.length);
+            args = traced;
+        }
+        try (ch) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.writeBytes(arg.getBytes(StandardCharsets.UTF_8));
+                request.write(0);
+            }
+            ch.write(ByteBuffer.wrap(request.toByteArray()));
+            ch.shutdownOutput();
+            InputStream in = Channels.newInputStream(ch);
+            in.transferTo(System.out);
+            System.out.flush();
+        }
+        return true;
+    }
+
+    private static SocketChannel connect() {
+        try {
+            return SocketChannel.open(UnixDomainSocketAddress.of(SOCKET.toPath()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String[] readRequest(SocketChannel client) throws IOException {
+        byte[] data = Channels.newInputStream(client).readAllBytes();
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == 0) {
+                args.add(new String(data, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+}
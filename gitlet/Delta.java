@@ -0,0 +1,126 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Binary deltas between two versions of an object, used by packfiles.
+ *  A delta is a list of instructions that either copy a range out of the
+ *  base object or insert literal bytes.
+ *
+ *  @LiZhu
+ */
+class Delta {
+
+    /** Size of the blocks of the base that are indexed for matching. */
+    private static final int BLOCK = 16;
+    private static final int INSERT = 0;
+    private static final int COPY = 1;
+
+    /** Returns a delta turning BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        HashMap<Integer, Integer> index = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            index.putIfAbsent(hash(base, i), i);
+        }
+        int pending = 0;
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer b = index.get(hash(target, i));
+            if (b == null || !Arrays.equals(base, b, b + BLOCK, target, i, i + BLOCK)) {
+                i++;
+                continue;
+            }
+            /** Grow the match in both directions */
+            int start = b;
+            int tStart = i;
+            while (start > 0 && tStart > pending && base[start - 1] == target[tStart - 1]) {
+                start--;
+                tStart--;
+            }
+            int end = b + BLOCK;
+            int tEnd = i + BLOCK;
+            while (end < base.length && tEnd < target.length && base[end] == target[tEnd]) {
+                end++;
+                tEnd++;
+            }
+            insert(out, target, pending, tStart);
+            out.write(COPY);
+            writeVarint(out, start);
+            writeVarint(out, end - start);
+            i = tEnd;
+            pending = tEnd;
+        }
+        insert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the object produced by applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        if (readVarint(in) != base.length) {
+            throw new IllegalArgumentException("delta base size mismatch");
+        }
+        byte[] result = new byte[(int) readVarint(in)];
+        int pos = 0;
+        while (in.hasRemaining()) {
+            int op = in.get();
+            if (op == COPY) {
+                int offset = (int) readVarint(in);
+                int len = (int) readVarint(in);
+                System.arraycopy(base, offset, result, pos, len);
+                pos += len;
+            } else {
+                int len = (int) readVarint(in);
+                in.get(result, pos, len);
+                pos += len;
+            }
+        }
+        if (pos != result.length) {
+            throw new IllegalArgumentException("corrupt delta");
+        }
+        return result;
+    }
+
+    private static void insert(ByteArrayOutputStream out, byte[] data, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = offset; i < offset + BLOCK; i++) {
+            h = h * 31 + data[i];
+        }
+        return h;
+    }
+
+    /** Writes VALUE to OUT as an unsigned LEB128 varint. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Reads an unsigned LEB128 varint from IN. */
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
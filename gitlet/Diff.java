@@ -0,0 +1,571 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** Line-level differences between two texts, streamed as a unified diff.
+ *
+ *  Texts are read through memory-mapped files where possible, and walked
+ *  from the start: equal lines are passed over one at a time, and at the
+ *  next difference up to gitlet.diffWindow lines of each text (65536 by
+ *  default) are split into lines, interned to small integers (equal ids
+ *  mean equal bytes) and compared with Myers' O(ND) algorithm in its
+ *  linear-space form, which finds the middle snake of the shortest edit
+ *  script and recurses on the two halves. The script is kept up to its
+ *  last matching line in the first half of the window, and the walk goes
+ *  on from there. Memory thus depends on the window, not the texts; the
+ *  script is minimal whenever each run of changes fits in half a window.
+ *
+ *  Hunks are printed as soon as they are complete. A hunk is cut, without
+ *  trailing context, once it holds MAX_HUNK lines.
+ *
+ *  @LiZhu
+ */
+class Diff {
+
+    /** Lines of context around each change. */
+    private static final int CONTEXT = 3;
+    /** A text with a NUL byte in its first this many bytes is binary. */
+    private static final int BINARY_PROBE = 8000;
+    /** Lines of each text compared at once. */
+    private static final int WINDOW = Integer.getInteger("gitlet.diffWindow", 1 << 16);
+    /** Lines a hunk may hold before it is printed. */
+    private static final int MAX_HUNK = 1 << 20;
+
+    /** Ops of the edit script. */
+    static final int EQUAL = 0;
+    static final int DELETE = 1;
+    static final int INSERT = 2;
+    static final int END = -1;
+
+    /** The text of a blob or file. While part of it is being compared,
+     *  line i of that part is bytes starts[i] to starts[i + 1]. */
+    static class Text {
+        private final ByteBuffer data;
+        private int[] starts = new int[64];
+        private int count;
+
+        private Text(ByteBuffer data) {
+            this.data = data;
+        }
+
+        /** Returns the text of blob UID, mapping its loose file if it has
+         *  one, or an empty text if UID is null. A chunked or compressed
+         *  blob is written to a temporary file first. */
+        static Text blob(String uid) {
+            if (uid == null) {
+                return new Text(ByteBuffer.allocate(0));
+            }
+            File loose = Utils.join(ObjectStore.looseDir(ObjectStore.BLOB), uid);
+            long offset = loose.isFile() ? Compression.rawOffset(loose) : -1;
+            if (offset >= 0) {
+                return file(loose, offset);
+            }
+            if (loose.isFile() || ChunkedBlob.exists(uid)) {
+                try {
+                    File tmp = File.createTempFile("gitlet", ".blob");
+                    tmp.deleteOnExit();
+                    Blob.checkout(uid, tmp);
+                    Text t = file(tmp);
+                    tmp.delete();
+                    return t;
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+            return new Text(ByteBuffer.wrap(Blob.read(uid)));
+        }
+
+        /** Returns the text of FILE, mapped into memory. */
+        static Text file(File file) {
+            return file(file, 0);
+        }
+
+        /** Returns the text of FILE from byte OFFSET on, mapped into memory. */
+        private static Text file(File file, long offset) {
+            try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                Trace.count(Trace.Counter.BYTES_MAPPED, ch.size() - offset);
+                return new Text(ch.map(FileChannel.MapMode.READ_ONLY, offset, ch.size() - offset));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        private int size() {
+            return data.limit();
+        }
+
+        /** Splits at most MAX lines starting at byte FROM into lines. */
+        private void split(int from, int max) {
+            int n = 0;
+            starts[0] = from;
+            for (int pos = from; pos < size() && n < max; ) {
+                pos = lineEnd(pos);
+                if (n + 2 > starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[++n] = pos;
+            }
+            count = n;
+        }
+
+        /** Returns the position just after the newline ending the line at
+         *  POS, or the end of the text. */
+        private int lineEnd(int pos) {
+            while (pos < size() && data.get(pos++) != '\n') {
+                continue;
+            }
+            return pos;
+        }
+
+        boolean isBinary() {
+            for (int i = 0; i < Math.min(size(), BINARY_PROBE); i++) {
+                if (data.get(i) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Returns true if the LEN bytes at POS equal those at OTHERPOS in
+         *  OTHER. */
+        private boolean equals(int pos, Text other, int otherPos, int len) {
+            return data.slice(pos, len).equals(other.data.slice(otherPos, len));
+        }
+
+        /** Returns true if the lines starting at POS in this text and at
+         *  OTHERPOS in OTHER are equal. */
+        boolean sameLine(int pos, Text other, int otherPos) {
+            int len = lineEnd(pos) - pos;
+            return len == other.lineEnd(otherPos) - otherPos && equals(pos, other, otherPos, len);
+        }
+
+        private boolean lineEquals(int i, Text other, int j) {
+            int len = starts[i + 1] - starts[i];
+            return len == other.starts[j + 1] - other.starts[j] && equals(starts[i], other, other.starts[j], len);
+        }
+
+        private long hash(int i) {
+            long h = 1125899906842597L;
+            for (int k = starts[i]; k < starts[i + 1]; k++) {
+                h = 31 * h + data.get(k);
+            }
+            return h;
+        }
+
+        /** Returns another text with the same contents, to be compared
+         *  independently of this one. */
+        Text copy() {
+            return new Text(data);
+        }
+
+        /** Writes the line starting at byte POS to OUT, ending it with a
+         *  newline if it has none and TERMINATE. Returns true if the line
+         *  had its own newline. */
+        boolean copyLine(int pos, OutputStream out, boolean terminate) throws IOException {
+            int end = lineEnd(pos);
+            byte[] line = new byte[end - pos];
+            data.get(pos, line);
+            out.write(line);
+            boolean newline = data.get(end - 1) == '\n';
+            if (!newline && terminate) {
+                out.write('\n');
+            }
+            return newline;
+        }
+
+        /** Writes the whole text to OUT. */
+        void copyTo(OutputStream out) throws IOException {
+            byte[] buf = new byte[8192];
+            for (int pos = 0; pos < size(); pos += buf.length) {
+                int n = Math.min(buf.length, size() - pos);
+                data.get(pos, buf, 0, n);
+                out.write(buf, 0, n);
+            }
+        }
+
+        /** Writes the line starting at byte POS to OUT, as a diff line. */
+        private void writeLine(int pos, OutputStream out) throws IOException {
+            if (!copyLine(pos, out, false)) {
+                out.write("\n\\ No newline at end of file\n".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private final Text a;
+    private final Text b;
+    private OutputStream out;
+
+    /** Where the script has got to in a and b, outside a window. */
+    private int posA;
+    private int posB;
+    /** The window being passed: lines x of a and y of b are next, and its
+     *  script is taken up to lines cutI and cutJ. */
+    private int x;
+    private int y;
+    private int cutI;
+    private int cutJ;
+    /** The lines of the last op. */
+    private int opA;
+    private int opB;
+
+    /** Interned ids of the lines of a and b in the current window. */
+    private int[] ids1 = new int[0];
+    private int[] ids2 = new int[0];
+    private final BitSet deleted = new BitSet();
+    private final BitSet inserted = new BitSet();
+    /** Furthest reaching x per diagonal, forward and backward. */
+    private int[] vf = new int[0];
+    private int[] vb = new int[0];
+
+    /** Lines of a and b passed so far. */
+    private int lineA;
+    private int lineB;
+    /** Positions in a of up to CONTEXT equal lines before the next change,
+     *  as a ring indexed by line number. */
+    private final int[] before = new int[CONTEXT];
+    private int beforeCount;
+    /** The open hunk: the op and position of each of its lines, its first
+     *  lines in a and b, and the number of equal lines ending it. */
+    private long[] hunk = new long[256];
+    private int hunkSize;
+    private int hunkA;
+    private int hunkB;
+    private int trailing;
+    private boolean open;
+
+    /** Returns the edit script from text A to text B, read with next. */
+    Diff(Text a, Text b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /** Writes the differences between texts A and B of the file at PATH to
+     *  OUT, labelled with the blob ids OLDID and NEWID; a null id marks a
+     *  file that does not exist on that side. */
+    static void write(String path, String oldID, Text a, String newID, Text b, OutputStream out) throws IOException {
+        print(out, "diff --gitlet a/" + path + " b/" + path + "\n");
+        if (oldID == null) {
+            print(out, "new file\n");
+        } else if (newID == null) {
+            print(out, "deleted file\n");
+        }
+        if (a.isBinary() || b.isBinary()) {
+            print(out, "Binary files " + label("a/", path, oldID) + " and " + label("b/", path, newID) + " differ\n");
+            return;
+        }
+        print(out, "--- " + label("a/", path, oldID) + "\n+++ " + label("b/", path, newID) + "\n");
+        Diff d = new Diff(a, b);
+        d.out = out;
+        d.run();
+    }
+
+    private static String label(String prefix, String path, String id) {
+        return id == null ? "/dev/null" : prefix + path;
+    }
+
+    private static void print(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Streams the edit script into hunks. */
+    private void run() throws IOException {
+        for (int op = next(); op != END; op = next()) {
+            if (op == EQUAL) {
+                equal(opA);
+            } else {
+                change(op, op == DELETE ? opA : opB);
+            }
+        }
+        close();
+    }
+
+    /** Returns the next op of the edit script from a to b, or END. The line
+     *  it concerns starts at opA in a (EQUAL and DELETE) and at opB in b
+     *  (EQUAL and INSERT). Equal lines are passed one at a time; at each
+     *  difference a window is compared and its script taken up to its cut. */
+    int next() {
+        while (true) {
+            if (x < cutI || y < cutJ) {
+                if (x < cutI && deleted.get(x)) {
+                    opA = a.starts[x++];
+                    return DELETE;
+                } else if (y < cutJ && inserted.get(y)) {
+                    opB = b.starts[y++];
+                    return INSERT;
+                }
+                opA = a.starts[x++];
+                opB = b.starts[y++];
+                return EQUAL;
+            }
+            if (cutI > 0 || cutJ > 0) {
+                posA = a.starts[cutI];
+                posB = b.starts[cutJ];
+                x = y = cutI = cutJ = 0;
+            }
+            if (posA == a.size() && posB == b.size()) {
+                return END;
+            }
+            if (posA < a.size() && posB < b.size()) {
+                int endA = a.lineEnd(posA);
+                int endB = b.lineEnd(posB);
+                if (endA - posA == endB - posB && a.equals(posA, b, posB, endA - posA)) {
+                    opA = posA;
+                    opB = posB;
+                    posA = endA;
+                    posB = endB;
+                    return EQUAL;
+                }
+            }
+            a.split(posA, WINDOW);
+            b.split(posB, WINDOW);
+            compare();
+            boolean complete = a.starts[a.count] == a.size() && b.starts[b.count] == b.size();
+            int[] cut = complete ? null : cut();
+            cutI = cut == null ? a.count : cut[0];
+            cutJ = cut == null ? b.count : cut[1];
+        }
+    }
+
+    /** Returns the position of the line of the last op in a. */
+    int opA() {
+        return opA;
+    }
+
+    /** Returns the position of the line of the last op in b. */
+    int opB() {
+        return opB;
+    }
+
+    /** Marks the lines deleted from and inserted into the current window by
+     *  a shortest edit script. */
+    private void compare() {
+        deleted.clear();
+        inserted.clear();
+        intern();
+        int max = (a.count + b.count + 1) / 2 + 1;
+        if (vf.length < 2 * max + 2) {
+            vf = new int[2 * max + 2];
+            vb = new int[2 * max + 2];
+        }
+        compare(0, a.count, 0, b.count);
+    }
+
+    /** Gives equal lines of the window equal ids, using an open-addressing
+     *  table keyed by line hash and checked byte by byte. */
+    private void intern() {
+        int lines = a.count + b.count;
+        int cap = Integer.highestOneBit(Math.max(4, lines * 2) - 1) << 1;
+        long[] hashes = new long[cap];
+        int[] slots = new int[cap]; // 1 + index of the first line with the id, or 0
+        boolean[] inB = new boolean[cap];
+        int[] idOfSlot = new int[cap];
+        if (ids1.length < a.count || ids2.length < b.count) {
+            ids1 = new int[Math.max(a.count, ids1.length)];
+            ids2 = new int[Math.max(b.count, ids2.length)];
+        }
+        int next = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            Text t = pass == 0 ? a : b;
+            int[] ids = pass == 0 ? ids1 : ids2;
+            for (int i = 0; i < t.count; i++) {
+                long h = t.hash(i);
+                int s = (int) (h ^ (h >>> 32)) & (cap - 1);
+                while (slots[s] != 0) {
+                    Text rep = inB[s] ? b : a;
+                    if (hashes[s] == h && t.lineEquals(i, rep, slots[s] - 1)) {
+                        break;
+                    }
+                    s = (s + 1) & (cap - 1);
+                }
+                if (slots[s] == 0) {
+                    hashes[s] = h;
+                    slots[s] = i + 1;
+                    inB[s] = pass == 1;
+                    idOfSlot[s] = next++;
+                }
+                ids[i] = idOfSlot[s];
+            }
+        }
+    }
+
+    /** Marks the lines deleted from a[ALO, AHI) and inserted into
+     *  b[BLO, BHI) by a shortest edit script between them. */
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && ids1[aLo] == ids2[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aHi > aLo && bHi > bLo && ids1[aHi - 1] == ids2[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            inserted.set(bLo, bHi);
+        } else if (bLo == bHi) {
+            deleted.set(aLo, aHi);
+        } else {
+            int[] snake = middleSnake(aLo, aHi, bLo, bHi);
+            compare(aLo, snake[0], bLo, snake[1]);
+            compare(snake[2], aHi, snake[3], bHi);
+        }
+    }
+
+    /** Returns the start and end {x, y, u, v} of the middle snake of the
+     *  shortest edit script from a[ALO, AHI) to b[BLO, BHI). */
+    private int[] middleSnake(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && vf[off + k - 1] < vf[off + k + 1]))
+                        ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k;
+                int xs = x;
+                int ys = y;
+                while (x < n && y < m && ids1[aLo + x] == ids2[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                vf[off + k] = x;
+                int c = delta - k;
+                if (odd && c >= -(d - 1) && c <= d - 1 && x + vb[off + c] >= n) {
+                    return new int[] {aLo + xs, bLo + ys, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && vb[off + k - 1] < vb[off + k + 1]))
+                        ? vb[off + k + 1] : vb[off + k - 1] + 1;
+                int y = x - k;
+                int xs = x;
+                int ys = y;
+                while (x < n && y < m && ids1[aHi - 1 - x] == ids2[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                vb[off + k] = x;
+                int c = delta - k;
+                if (!odd && c >= -d && c <= d && x + vf[off + c] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - xs, bHi - ys};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Returns the lines {i, j} of a and b just after the last matching
+     *  line in the first half of the window, or the last one anywhere, or
+     *  null if no line matches. The edit script is kept up to there. */
+    private int[] cut() {
+        int[] last = null;
+        int[] half = null;
+        int j = 0;
+        for (int i = 0; i < a.count; i++) {
+            if (deleted.get(i)) {
+                continue;
+            }
+            while (inserted.get(j)) {
+                j++;
+            }
+            j++;
+            last = new int[] {i + 1, j};
+            if (2 * (i + 1) <= a.count && 2 * j <= b.count) {
+                half = last;
+            }
+        }
+        return half != null ? half : last;
+    }
+
+    /** Passes an equal line, starting at POS in a. */
+    private void equal(int pos) throws IOException {
+        lineA++;
+        lineB++;
+        if (!open) {
+            before[(lineA - 1) % CONTEXT] = pos;
+            beforeCount = Math.min(beforeCount + 1, CONTEXT);
+            return;
+        }
+        add(EQUAL, pos);
+        trailing++;
+        if (trailing > 2 * CONTEXT) {
+            close();
+        }
+    }
+
+    /** Passes a deleted or inserted line, starting at POS in its text. */
+    private void change(int op, int pos) throws IOException {
+        if (!open) {
+            open = true;
+            hunkA = lineA - beforeCount;
+            hunkB = lineB - beforeCount;
+            for (int k = beforeCount; k > 0; k--) {
+                add(EQUAL, before[(lineA - k) % CONTEXT]);
+            }
+            beforeCount = 0;
+        }
+        add(op, pos);
+        trailing = 0;
+        if (op == DELETE) {
+            lineA++;
+        } else {
+            lineB++;
+        }
+        if (hunkSize >= MAX_HUNK) {
+            close();
+        }
+    }
+
+    private void add(int op, int pos) {
+        if (hunkSize == hunk.length) {
+            hunk = Arrays.copyOf(hunk, hunk.length * 2);
+        }
+        hunk[hunkSize++] = (long) op << 32 | pos;
+    }
+
+    /** Prints the open hunk, keeping CONTEXT of its trailing equal lines,
+     *  and saves the last ones dropped as context for the next hunk. */
+    private void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        int drop = Math.max(0, trailing - CONTEXT);
+        hunkSize -= drop;
+        beforeCount = Math.min(drop, CONTEXT);
+        for (int k = 0; k < beforeCount; k++) {
+            before[(lineA - beforeCount + k) % CONTEXT] = (int) hunk[hunkSize + drop - beforeCount + k];
+        }
+        int countA = 0;
+        int countB = 0;
+        for (int k = 0; k < hunkSize; k++) {
+            int op = (int) (hunk[k] >>> 32);
+            countA += op == INSERT ? 0 : 1;
+            countB += op == DELETE ? 0 : 1;
+        }
+        print(out, "@@ -" + range(hunkA, countA) + " +" + range(hunkB, countB) + " @@\n");
+        for (int k = 0; k < hunkSize; k++) {
+            int op = (int) (hunk[k] >>> 32);
+            out.write(op == EQUAL ? ' ' : op == DELETE ? '-' : '+');
+            (op == INSERT ? b : a).writeLine((int) hunk[k], out);
+        }
+        hunkSize = 0;
+        trailing = 0;
+        open = false;
+    }
+
+    private static String range(int start, int len) {
+        return (len == 0 ? start : start + 1) + (len == 1 ? "" : "," + len);
+    }
+}
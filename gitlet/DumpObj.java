@@ -5,7 +5,7 @@ import java.util.List;
 
 /** A debugging class whose main program may be invoked as follows:
  *      java gitlet.DumpObj FILE...
- *  where each FILE is a file produced by Utils.writeObject (or any file
+ *  where each FILE is a file produced by ObjectCodec.encode (or any file
  *  containing a serialized object).  This will simply read FILE,
  *  deserialize it, and call the dump method on the resulting Object.
  *  The object must implement the gitlet.Dumpable interface for this
@@ -36,8 +36,8 @@ public class DumpObj {
         File file = new File("/Users/lizhu/test-gitlet/.gitlet/objects/commits");
         List<String> a = Utils.plainFilenamesIn(file);
         for (String fileName : a) {
-            Dumpable obj = Utils.readObject(Utils.join(file, fileName),
-                                            Dumpable.class);
+            Dumpable obj = ObjectCodec.decode(Compression.read(Utils.join(file, fileName)),
+                                              Dumpable.class);
             obj.dump();
             System.out.println("---");
         }
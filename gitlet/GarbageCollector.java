@@ -0,0 +1,254 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** Removes objects that nothing refers to.
+ *
+ *  Marking starts from every branch head, including remote ones, and from
+ *  the blobs staged for addition. The reachable commits come from the
+ *  reachability bitmaps, walking the commit-graph only between a head and
+ *  the nearest commit with a bitmap; their trees are then read in
+ *  parallel, skipping subtrees already marked. Sweeping deletes unmarked loose objects and rewrites
+ *  packs without their unmarked objects, then folds the remaining loose
+ *  objects into a pack and rewrites the bitmaps.
+ *
+ *  Objects younger than the grace window (gitlet.gcGraceSeconds, two weeks
+ *  by default) are never removed, since another process may have written
+ *  them and not yet made them reachable.
+ *
+ *  Commands that write objects start a gc in the background once there are
+ *  more than gitlet.gcAutoThreshold loose objects (6700 by default).
+ *
+ *  @LiZhu
+ */
+class GarbageCollector {
+
+    private static final long GRACE_MILLIS = Long.getLong("gitlet.gcGraceSeconds", 14 * 24 * 3600) * 1000;
+    private static final int AUTO_THRESHOLD = Integer.getInteger("gitlet.gcAutoThreshold", 6700);
+    private static final File GC_LOCK = join(GITLET_DIR, "gc");
+
+    /** Ids of every reachable object. */
+    private final Set<String> marked = ConcurrentHashMap.newKeySet();
+    /** Objects last modified before this time may be removed. */
+    private final long cutoff;
+
+    private GarbageCollector(long graceMillis) {
+        this.cutoff = System.currentTimeMillis() - graceMillis;
+    }
+
+    /** Runs a gc, with no grace window if NOW, and prints what it did. If
+     *  AUTO, does nothing unless there are enough loose objects. */
+    static void run(boolean now, boolean auto) {
+        if (auto && looseCount() <= AUTO_THRESHOLD) {
+            return;
+        }
+        LockFile lock = lock();
+        try (lock) {
+            GarbageCollector gc = new GarbageCollector(now ? 0 : GRACE_MILLIS);
+            long before = diskUsage();
+            long start = System.nanoTime();
+            int reachable = gc.mark();
+            long markMillis = (System.nanoTime() - start) / 1000000;
+            int[] removed = gc.sweep();
+            int packed = ObjectStore.repack(false);
+            writeBitmaps();
+            long after = diskUsage();
+            System.out.println("Marked " + reachable + " reachable objects in " + markMillis + " ms.");
+            System.out.println("Removed " + (removed[0] + removed[1] + removed[2]) + " unreachable objects ("
+                    + removed[0] + " commits, " + removed[1] + " trees, " + removed[2] + " blobs).");
+            System.out.println("Packed " + packed + " objects.");
+            System.out.println("Objects took " + before + " bytes and now take " + after + " bytes.");
+        }
+    }
+
+    /** Takes the gc lock, which every command that rewrites the set of
+     *  packs holds while it does, so that a repack cannot interleave with a
+     *  gc running in the background. */
+    static LockFile lock() {
+        LockFile lock = LockFile.tryAcquire(GC_LOCK);
+        if (lock == null) {
+            exitWithError("Another gc is running.");
+        }
+        return lock;
+    }
+
+    /** Starts "gc --auto" in a separate process if the repository has more
+     *  loose objects than the threshold. */
+    static void autoGc() {
+        if (looseCount() <= AUTO_THRESHOLD || new File(GC_LOCK.getPath() + LockFile.SUFFIX).exists()) {
+            return;
+        }
+        List<String> command = new ArrayList<>();
+        command.add(join(System.getProperty("java.home"), "bin", "java").getPath());
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith("gitlet.")) {
+                command.add("-D" + key + "=" + System.getProperty(key));
+            }
+        }
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), "gitlet.Main", "gc", "--auto"));
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.directory(CWD);
+        pb.environment().put("GITLET_NO_DAEMON", "1");
+        pb.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        pb.redirectError(ProcessBuilder.Redirect.DISCARD);
+        try {
+            pb.start();
+        } catch (IOException excp) {
+            // Maintenance is best effort; the next command will try again
+        }
+    }
+
+    /** Marks every reachable object and returns how many there are. */
+    private int mark() {
+        CommitGraph graph = CommitGraph.get();
+        CommitBitmaps bitmaps = CommitBitmaps.get(graph);
+        BitSet seen = new BitSet(graph.size());
+        for (String id : heads()) {
+            seen.or(bitmaps.reachable(graph.row(id)));
+        }
+        List<String> commits = new ArrayList<>();
+        for (int r = seen.nextSetBit(0); r >= 0; r = seen.nextSetBit(r + 1)) {
+            commits.add(graph.id(r));
+        }
+        marked.addAll(commits);
+        marked.addAll(Staging.load().getStagingAdd().values());
+        ForkJoinPool pool = new ForkJoinPool(TreeScanner.parallelism());
+        try {
+            pool.submit(() -> commits.parallelStream().forEach(id ->
+                markTree(ObjectStore.readObject(ObjectStore.COMMIT, id, Commit.class).getTreeID()))).join();
+        } finally {
+            pool.shutdown();
+        }
+        /** A chunked blob keeps its chunks */
+        for (String id : ObjectStore.list(ObjectStore.MANIFEST)) {
+            if (marked.contains(id)) {
+                marked.addAll(ChunkedBlob.read(id).getChunks());
+            }
+        }
+        return marked.size();
+    }
+
+    private void markTree(String treeID) {
+        if (treeID.equals(Tree.EMPTY_UID) || !marked.add(treeID)) {
+            return;
+        }
+        Tree tree = Tree.read(treeID);
+        marked.addAll(tree.getFiles().values());
+        for (String sub : tree.getTrees().values()) {
+            markTree(sub);
+        }
+    }
+
+    /** Writes reachability bitmaps for the branch heads and checkpoints
+     *  of the commit-graph, which may have been rebuilt by the sweep. */
+    private static void writeBitmaps() {
+        CommitGraph graph = CommitGraph.get();
+        List<Integer> tips = new ArrayList<>();
+        for (String id : heads()) {
+            tips.add(graph.row(id));
+        }
+        CommitBitmaps.write(graph, tips);
+    }
+
+    /** Returns the commit ids of all local and remote branch heads. */
+    private static List<String> heads() {
+        List<String> ids = new ArrayList<>();
+        try (Stream<Path> refs = Files.walk(REFS_DIR.toPath())) {
+            refs.filter(Files::isRegularFile)
+                .filter(p -> !p.toString().endsWith(LockFile.SUFFIX))
+                .forEach(p -> ids.add(readContentsAsString(p.toFile()).trim()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return ids;
+    }
+
+    /** Deletes unmarked objects older than the cutoff, and returns the
+     *  number of commits, trees and blobs removed. */
+    private int[] sweep() {
+        int[] removed = new int[3];
+        for (int type : ObjectStore.TYPES) {
+            File dir = ObjectStore.looseDir(type);
+            String[] names = dir.list();
+            for (String name : names == null ? new String[0] : names) {
+                File f = join(dir, name);
+                boolean temp = name.length() != UID_LENGTH;
+                if (f.lastModified() < cutoff && (temp || !marked.contains(name))) {
+                    f.delete();
+                    if (!temp) {
+                        removed[kind(type)]++;
+                    }
+                }
+            }
+        }
+        List<PackFile> packs = ObjectStore.packs();
+        Set<String> young = new HashSet<>();
+        boolean garbage = false;
+        for (PackFile p : packs) {
+            boolean old = p.getPackFile().lastModified() < cutoff;
+            for (int i = 0; i < p.size(); i++) {
+                String id = p.idAt(i);
+                if (!old) {
+                    young.add(id);
+                } else if (!marked.contains(id)) {
+                    garbage = true;
+                    removed[kind(p.typeAt(i))]++;
+                }
+            }
+        }
+        if (garbage) {
+            ObjectStore.repack(true, id -> marked.contains(id) || young.contains(id));
+        }
+        if (removed[0] > 0) {
+            /** Removed commits must disappear from the auxiliary indexes too */
+            LockFile graphLock = LockFile.acquire(COMMIT_GRAPH);
+            try (graphLock) {
+                CommitGraph.rebuild(graphLock);
+            }
+            LockFile indexLock = LockFile.acquire(COMMIT_INDEX_DIR);
+            try (indexLock) {
+                CommitIndex.rebuild();
+            }
+        }
+        return removed;
+    }
+
+    /** Returns the index in the counts of removed objects of TYPE: commits,
+     *  trees, or blobs, which include chunks and manifests. */
+    private static int kind(int type) {
+        return type == ObjectStore.COMMIT ? 0 : type == ObjectStore.TREE ? 1 : 2;
+    }
+
+    /** Returns the number of loose objects. */
+    private static int looseCount() {
+        int n = 0;
+        for (int type : ObjectStore.TYPES) {
+            String[] names = ObjectStore.looseDir(type).list();
+            n += names == null ? 0 : names.length;
+        }
+        return n;
+    }
+
+    /** Returns the total size of the object store, in bytes. */
+    private static long diskUsage() {
+        try (Stream<Path> files = Files.walk(OBJECTS_DIR.toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -1,9 +1,24 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static gitlet.Repository.*;
 import static gitlet.Utils.*;
@@ -20,59 +35,75 @@ public class Gitlet implements Serializable {
         }
         createRepository();
         Commit initCommit = new Commit();
-        setHead("master");
+        Refs.setHead("master");
         saveCommit(initCommit, "master");
         Staging stagingArea = new Staging();
-        writeObject(INDEX, stagingArea);
+        stagingArea.save();
     }
 
-    public void add(String filename) {
-        File file = join(CWD, filename);
-        if (!file.exists()) {
-            exitWithError("File does not exist.");
+    /** Stages the files named by PATHSPECS, as expanded by Pathspec. Files
+     *  are hashed in parallel, each new blob is stored once, and the index
+     *  is written once at the end. */
+    public void add(List<String> pathspecs) {
+        TreeSet<String> filenames = Pathspec.expand(pathspecs, Pathspec::workingFiles);
+        for (String filename : filenames) {
+            if (!join(CWD, filename).isFile()) {
+                exitWithError("File does not exist.");
+            }
         }
-        Blob blob = new Blob(filename, file);
-        Staging stagingArea = readObject(INDEX, Staging.class);
+        Staging stagingArea = Staging.lock();
         /** Get the current commit */
         Commit currCommit = getCurrentCommit();
-        if (currCommit.getFileMap().containsKey(filename)) {
-            if (!currCommit.getFileMap().get(filename).equals(blob.getUID())) {
-                stagingArea.getStagingAdd().put(filename, blob.getUID());
-                blob.storeBlob();
-            }
-            if (stagingArea.getStagingRemove().containsKey(filename)) {
-                stagingArea.getStagingRemove().remove(filename);
+        Set<String> stored = new HashSet<>();
+        TreeScanner.scan(new ArrayList<>(filenames), stagingArea, (filename, blobUID) -> {
+            if (currCommit.getFileMap().containsKey(filename)) {
+                if (!currCommit.getFileMap().get(filename).equals(blobUID)) {
+                    stagingArea.getStagingAdd().put(filename, blobUID);
+                    if (stored.add(blobUID)) {
+                        Blob.store(join(CWD, filename), blobUID);
+                    }
+                }
+                if (stagingArea.getStagingRemove().containsKey(filename)) {
+                    stagingArea.getStagingRemove().remove(filename);
+                }
+            } else {
+                stagingArea.getStagingAdd().put(filename, blobUID);
+                if (stored.add(blobUID)) {
+                    Blob.store(join(CWD, filename), blobUID);
+                }
             }
-        } else {
-            stagingArea.getStagingAdd().put(filename, blob.getUID());
-            blob.storeBlob();
-        }
-        writeObject(INDEX, stagingArea);
+        });
+        stagingArea.save();
     }
 
-    public void rm(String filename) {
-        File file = join(CWD, filename);
+    /** Unstages or stages for removal the files named by PATHSPECS, which
+     *  are matched against the tracked and staged files, and writes the
+     *  index once at the end. */
+    public void rm(List<String> pathspecs) {
         /** Get staging area */
-        Staging stagingArea = readObject(INDEX, Staging.class);
+        Staging stagingArea = Staging.lock();
         /** Get current commit */
         Commit currCommit = getCurrentCommit();
-        Blob blob = new Blob(filename, file);
-        if (stagingArea.getStagingAdd().containsKey(filename)) {
-            stagingArea.getStagingAdd().remove(filename);
-        } else if (currCommit.getFileMap().containsKey(filename)) {
-            stagingArea.getStagingRemove().put(filename, blob.getUID());
-            restrictedDelete(filename);
-        } else if (!currCommit.getFileMap().containsKey(filename)) {
-            stagingArea.getStagingRemove().put(filename, blob.getUID());
-        } else {
-            exitWithError("No reason to remove the file.");
+        TreeSet<String> filenames = Pathspec.expand(pathspecs, () -> {
+            TreeSet<String> known = new TreeSet<>(currCommit.getFileMap().keySet());
+            known.addAll(stagingArea.getStagingAdd().keySet());
+            return known;
+        });
+        for (String filename : filenames) {
+            if (stagingArea.getStagingAdd().containsKey(filename)) {
+                stagingArea.getStagingAdd().remove(filename);
+            } else if (currCommit.getFileMap().containsKey(filename)) {
+                stagingArea.getStagingRemove().put(filename, currCommit.getFileMap().get(filename));
+                Checkout.deleteWorkingFile(filename);
+            } else {
+                exitWithError("No reason to remove the file.");
+            }
         }
-        writeObject(INDEX, stagingArea);
+        stagingArea.save();
     }
 
-
     public void commit(String message) {
-        Staging stagingArea = readObject(INDEX, Staging.class);
+        Staging stagingArea = Staging.lock();
         if (stagingArea.getStagingAdd().isEmpty() && stagingArea.getStagingRemove().isEmpty()) {
             exitWithError("No changes added to the commit.");
         }
@@ -80,49 +111,64 @@ public class Gitlet implements Serializable {
             exitWithError("Please enter a commit message.");
         }
         Commit currCommit = getCurrentCommit();
-        Commit newCommit = new Commit(message, currCommit.getUID(), currCommit.getFileMap());
-        stageCommit(newCommit);
+        Commit newCommit = new Commit(message, currCommit.getUID(), stageTree(stagingArea, currCommit.getTreeID()));
         saveCommit(newCommit, currBranch());
         clearStaging(stagingArea);
     }
 
     public void log() {
-        Commit c = getCurrentCommit();
-        while (c.getParentID() != null) {
-            c.print();
-            c = readObject(join(COMMIT_DIR, c.getParentID()), Commit.class);
+        log(History.FIRST_PARENT, 0, Integer.MAX_VALUE, Long.MIN_VALUE, false);
+    }
+
+    /** Prints at most LIMIT commits of the current branch's history walked
+     *  in ORDER, a History order, after skipping SKIP of them and leaving
+     *  out those made before SINCE; only their ids and messages if
+     *  ONELINE. Commits are read only as they are printed, and the walk
+     *  stops once the output is closed. */
+    public void log(int order, int skip, int limit, long since, boolean oneline) {
+        CommitGraph graph = CommitGraph.get();
+        History history = new History(graph, graph.row(getCurrentCommitID()), order, since);
+        try (ConsoleWriter out = new ConsoleWriter()) {
+            for (int n = 0; n < skip && history.hasNext(); n++) {
+                history.next();
+            }
+            for (int n = 0; n < limit && history.hasNext() && !out.closed(); n++) {
+                out.print(readCommit(graph.id(history.next())).format(oneline));
+            }
         }
-        c.print();
     }
 
     public void globalLog() {
-        List<String> commits = plainFilenamesIn(COMMIT_DIR);
-        for (String s : commits) {
-            Commit c = readObject(join(COMMIT_DIR, s), Commit.class);
-            c.print();
-        }
+        globalLog(Long.MIN_VALUE, null);
+    }
+
+    /** Prints every commit made at or after SINCE whose message contains
+     *  MESSAGE, or every commit at all if MESSAGE is null. */
+    public void globalLog(long since, String message) {
+        GlobalLog.print(since, message);
     }
 
     public void find(String message) {
-        List<String> commits = plainFilenamesIn(COMMIT_DIR);
-        int count = 0;
-        for (String s : commits) {
-            Commit c = readObject(join(COMMIT_DIR, s), Commit.class);
-            if (c.getCommitMessage().equals(message)) {
-                System.out.println(c.getUID());
-                count++;
-            }
-        }
-        if (count == 0) {
+        find(message, CommitIndex.EXACT, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** Prints the ids of at most LIMIT commits made between SINCE and UNTIL
+     *  whose message matches MESSAGE in MODE, using the commit index. */
+    public void find(String message, int mode, long since, long until, int limit) {
+        List<String> commits = CommitIndex.get().query(message, mode, since, until, limit);
+        if (commits.isEmpty()) {
             exitWithError("Found no commit with that message.");
         }
+        for (String s : commits) {
+            System.out.println(s);
+        }
     }
 
     public void status() {
         /** Branches */
         System.out.println("=== Branches ===");
         System.out.println("*" + currBranch());
-        List<String> heads = plainFilenamesIn(HEADS_DIR);
+        List<String> heads = Refs.branches();
         for (String s : heads) {
             if (!s.equals(currBranch())) {
                 System.out.println(s);
@@ -131,7 +177,7 @@ public class Gitlet implements Serializable {
         System.out.println();
 
         /** Staged Files */
-        Staging stagingArea = readObject(INDEX, Staging.class);
+        Staging stagingArea = Staging.load();
         System.out.println("=== Staged Files ===");
         for (String s : stagingArea.getStagingAdd().keySet()) {
             System.out.println(s);
@@ -149,19 +195,19 @@ public class Gitlet implements Serializable {
         System.out.println("=== Modifications Not Staged For Commit ===");
         Commit currCommit = getCurrentCommit();
         // Tracked in the current commit, changed in the working directory, but not staged;
-        for (String s : plainFilenamesIn(CWD)) {
-            File file = join(CWD, s);
-            Blob blob = new Blob(s, file);
+        List<String> workingFiles = Pathspec.workingFiles();
+        // Only files whose stat data changed since they were last hashed are read
+        TreeScanner.scan(workingFiles, stagingArea, (s, blobUID) -> {
             if (currCommit.getFileMap().containsKey(s)) {
-                if (!currCommit.getFileMap().get(s).equals(blob.getUID()) && !stagingArea.getStagingAdd().containsKey(s)) {
+                if (!currCommit.getFileMap().get(s).equals(blobUID) && !stagingArea.getStagingAdd().containsKey(s)) {
                     System.out.println(s + " (modified)");
                 }
             }
             // Staged for addition, but with different contents than in the working directory
-            if (stagingArea.getStagingAdd().containsKey(s) && !stagingArea.getStagingAdd().get(s).equals(blob.getUID())) {
+            if (stagingArea.getStagingAdd().containsKey(s) && !stagingArea.getStagingAdd().get(s).equals(blobUID)) {
                 System.out.println(s + " (modified)");
             }
-        }
+        });
         // Staged for addition, but deleted in the working directory
         for (String s : stagingArea.getStagingAdd().keySet()) {
             if (!join(CWD, s).exists()) {
@@ -179,12 +225,18 @@ public class Gitlet implements Serializable {
 
         /** Untracked files */
         System.out.println("=== Untracked Files ===");
-        for (String s : plainFilenamesIn(CWD)) {
+        for (String s : workingFiles) {
             if (!stagingArea.getStagingAdd().containsKey(s) && !currCommit.getFileMap().containsKey(s)) {
                 System.out.println(s);
             }
         }
         System.out.println();
+
+        /** Save refreshed stat data so the next status can skip hashing */
+        stagingArea.pruneStatCache(workingFiles);
+        if (stagingArea.isDirty()) {
+            stagingArea.saveIfUnchanged();
+        }
     }
 
     public void checkoutFile(String filename) {
@@ -193,25 +245,24 @@ public class Gitlet implements Serializable {
             exitWithError("File does not exist in that commit.");
         }
         String blobUID = currCommit.getFileMap().get(filename);
-        copyFile(blobUID);
+        copyFile(filename, blobUID);
     }
 
     public void checkoutFileWithCommit(String commitID, String filename) {
-        List<String> commits = plainFilenamesIn(COMMIT_DIR);
-        String s = getFullCommitID(commits, commitID);
+        String s = getFullCommitID(commitID);
         if (s == null) {
             exitWithError("No commit with that id exists.");
         }
-        Commit commit = readObject(join(COMMIT_DIR, s), Commit.class);
+        Commit commit = readCommit(s);
         if (!commit.getFileMap().containsKey(filename)) {
             exitWithError("File does not exist in that commit.");
         }
         String blobUID = commit.getFileMap().get(filename);
-        copyFile(blobUID);
+        copyFile(filename, blobUID);
     }
 
     public void checkoutBranch(String branchName) {
-        List<String> branches = plainFilenamesIn(HEADS_DIR);
+        List<String> branches = Refs.branches();
         if (!branches.contains(branchName)) {
             exitWithError("No such branch exists.");
         }
@@ -219,66 +270,198 @@ public class Gitlet implements Serializable {
             exitWithError("No need to checkout the current branch.");
         }
         Commit currCommit = getCurrentCommit();
-        setHead(branchName);
-        Commit checkout = getCurrentCommit();
-        Staging stagingArea = readObject(INDEX, Staging.class);
-        checkUntracked(currCommit, checkout, stagingArea);
-        checkoutFiles(currCommit, checkout);
+        Commit checkout = readCommit(readContentsAsString(join(HEADS_DIR, branchName)));
+        Staging stagingArea = Staging.lock();
+        TreeMap<String, String[]> changes = Checkout.changes(currCommit, checkout);
+        Checkout.checkUntracked(changes, stagingArea);
+        Refs.setHead(branchName);
+        checkoutFiles(changes);
         clearStaging(stagingArea);
     }
 
     public void branch(String branchName) {
-        List<String> branches = plainFilenamesIn(HEADS_DIR);
-        if (branches.contains(branchName)) {
+        if (!Refs.compareAndSet(branchName, null, getCurrentCommitID())) {
             exitWithError("A branch with that name already exists.");
         }
-        File file = join(HEADS_DIR, branchName);
-        try {
-            file.createNewFile();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        Commit currCommit = getCurrentCommit();
-        currCommit.setSplit(true);
-        currCommit.getBranches().add(branchName);
-        currCommit.getBranches().add(currBranch());
-        writeObject(join(COMMIT_DIR, currCommit.getUID()), currCommit);
-        writeContents(file, currCommit.getUID());
     }
 
     public void rmBranch(String branchName) {
-        List<String> branches = plainFilenamesIn(HEADS_DIR);
+        List<String> branches = Refs.branches();
         if (!branches.contains(branchName)) {
             exitWithError("A branch with that name does not exist.");
         }
         if (currBranch().equals(branchName)) {
             exitWithError("Cannot remove the current branch.");
         }
-        File file = join(HEADS_DIR, branchName);
-        file.delete();
+        updateBranch(branchName, Refs.read(branchName), null);
     }
 
     public void reset(String commitID) {
-        List<String> commits = plainFilenamesIn(COMMIT_DIR);
-        String s = getFullCommitID(commits, commitID);
+        String s = getFullCommitID(commitID);
         if (s == null) {
             exitWithError("No commit with that id exists.");
         }
         Commit currCommit = getCurrentCommit();
-        Commit resetCommit = readObject(join(COMMIT_DIR, s), Commit.class);
-        Staging stagingArea = readObject(INDEX, Staging.class);
-        checkUntracked(currCommit, resetCommit, stagingArea);
-        checkoutFiles(currCommit, resetCommit);
-        writeContents(join(HEADS_DIR, currBranch()), s);
+        Commit resetCommit = readCommit(s);
+        Staging stagingArea = Staging.lock();
+        TreeMap<String, String[]> changes = Checkout.changes(currCommit, resetCommit);
+        Checkout.checkUntracked(changes, stagingArea);
+        updateBranch(currBranch(), currCommit.getUID(), s);
+        checkoutFiles(changes);
         clearStaging(stagingArea);
     }
 
+    /** Prints the number of commits reachable from REV, a branch name or
+     *  commit id, or from the current commit if REV is null. */
+    public void count(String rev) {
+        CommitGraph graph = CommitGraph.get();
+        int row = graph.row(rev == null ? getCurrentCommitID() : resolveRevision(rev));
+        System.out.println(CommitBitmaps.get(graph).reachable(row).cardinality());
+    }
+
+    /** Prints the line differences between commits FROM and TO if both are
+     *  given, between the current commit and the index if CACHED, and
+     *  between the index and the working directory otherwise. Paths whose
+     *  blob ids are equal on both sides are never read. */
+    public void diff(String from, String to, boolean cached) {
+        TreeMap<String, String[]> changes;
+        if (from != null) {
+            changes = Checkout.changes(readCommit(resolveRevision(from)), readCommit(resolveRevision(to)));
+        } else {
+            Staging stagingArea = Staging.load();
+            TreeMap<String, String> index = new TreeMap<>(getCurrentCommit().getFileMap());
+            index.keySet().removeAll(stagingArea.getStagingRemove().keySet());
+            if (cached) {
+                changes = new TreeMap<>();
+                for (String s : stagingArea.getStagingRemove().keySet()) {
+                    changes.put(s, new String[] {stagingArea.getStagingRemove().get(s), null});
+                }
+                for (Map.Entry<String, String> e : stagingArea.getStagingAdd().entrySet()) {
+                    String head = index.get(e.getKey());
+                    if (!e.getValue().equals(head)) {
+                        changes.put(e.getKey(), new String[] {head, e.getValue()});
+                    }
+                }
+            } else {
+                index.putAll(stagingArea.getStagingAdd());
+                changes = worktreeChanges(index, stagingArea);
+            }
+        }
+        OutputStream out = new BufferedOutputStream(System.out, 1 << 16);
+        try {
+            for (Map.Entry<String, String[]> e : changes.entrySet()) {
+                String path = e.getKey();
+                String[] blobs = e.getValue();
+                /** The new side of a working-tree diff is the working file, which is not stored */
+                boolean working = from == null && !cached;
+                Diff.Text b = working && blobs[1] != null ? Diff.Text.file(join(CWD, path)) : Diff.Text.blob(blobs[1]);
+                Diff.write(path, blobs[0], Diff.Text.blob(blobs[0]), blobs[1], b, out);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the paths of INDEX whose working files differ from it,
+     *  mapped to their blob in INDEX and the blob id of the working file,
+     *  or null if it was deleted. Unchanged files are recognized by their
+     *  stat data in SA without being read. */
+    private TreeMap<String, String[]> worktreeChanges(TreeMap<String, String> index, Staging sa) {
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        List<String> present = new ArrayList<>();
+        for (String s : index.keySet()) {
+            if (join(CWD, s).isFile()) {
+                present.add(s);
+            } else {
+                changes.put(s, new String[] {index.get(s), null});
+            }
+        }
+        TreeScanner.scan(present, sa, (s, blobUID) -> {
+            if (!blobUID.equals(index.get(s))) {
+                changes.put(s, new String[] {index.get(s), blobUID});
+            }
+        });
+        if (sa.isDirty()) {
+            sa.saveIfUnchanged();
+        }
+        return changes;
+    }
+
+    public void mergeBase(String first, String second, boolean all) {
+        CommitGraph graph = CommitGraph.get();
+        int a = graph.row(resolveRevision(first));
+        int b = graph.row(resolveRevision(second));
+        List<Integer> bases = MergeBase.find(graph, a, b);
+        if (bases.isEmpty()) {
+            exitWithError("No common ancestor.");
+        }
+        for (int r : all ? bases : bases.subList(0, 1)) {
+            System.out.println(graph.id(r));
+        }
+    }
+
+    public void migrate() {
+        int count;
+        LockFile lock = GarbageCollector.lock();
+        try (lock) {
+            count = ObjectStore.migrate();
+        }
+        byte[] index = readContents(INDEX);
+        if (ObjectCodec.isLegacy(index)) {
+            deserialize(index, Staging.class).save();
+            count++;
+        }
+        System.out.println("Migrated " + count + " objects.");
+    }
+
+    public void repack(boolean all) {
+        int count;
+        LockFile lock = GarbageCollector.lock();
+        try (lock) {
+            count = ObjectStore.repack(all);
+        }
+        System.out.println("Packed " + count + " objects.");
+    }
+
+    /** Prints the value of repository setting KEY, or sets it to VALUE if
+     *  VALUE is not null. */
+    public void config(String key, String value) {
+        if (value == null) {
+            String current = Config.get(key, null);
+            if (current != null) {
+                System.out.println(current);
+            }
+            return;
+        }
+        if (key.equals("compression") && Compression.Codec.byName(value) == null) {
+            exitWithError("Unknown compression codec " + value + ".");
+        }
+        Config.set(key, value);
+    }
+
+    /** Removes repository setting KEY. */
+    public void unsetConfig(String key) {
+        Config.set(key, null);
+    }
+
+    /** Prints compression statistics of the object store. */
+    public void stats() {
+        Compression.printStats();
+    }
+
+    /** Removes unreachable objects, with no grace window if NOW, and packs
+     *  the rest. If AUTO, only when there are many loose objects. */
+    public void gc(boolean now, boolean auto) {
+        GarbageCollector.run(now, auto);
+    }
+
     public void merge(String branchName) {
-        Staging stagingArea = readObject(INDEX, Staging.class);
+        Staging stagingArea = Staging.lock();
         if (!stagingArea.getStagingAdd().isEmpty() || !stagingArea.getStagingRemove().isEmpty()) {
             exitWithError("You have uncommitted changes.");
         }
-        List<String> branches = plainFilenamesIn(HEADS_DIR);
+        List<String> branches = Refs.branches();
         if (!branches.contains(branchName)) {
             exitWithError("A branch with that name does not exist.");
         }
@@ -287,68 +470,82 @@ public class Gitlet implements Serializable {
             exitWithError("Cannot merge a branch with itself.");
         }
         Commit currCommit = getCurrentCommit();
-        Commit given = readObject(join(COMMIT_DIR, readContentsAsString(join(HEADS_DIR, branchName))), Commit.class);
-        checkUntracked(currCommit, given, stagingArea);
+        Commit given = readCommit(readContentsAsString(join(HEADS_DIR, branchName)));
+        Checkout.checkUntracked(Checkout.changes(currCommit, given), stagingArea);
 
-        /** Get split point */
-        Commit split = given;
-        while (!split.isSplit() && !split.getBranches().contains(currBranch)) {
-            split = readObject(join(COMMIT_DIR, split.getParentID()), Commit.class);
-        }
-
-        if (split.getUID().equals(given.getUID())) {
+        CommitGraph graph = CommitGraph.get();
+        int currRow = graph.row(currCommit.getUID());
+        int givenRow = graph.row(given.getUID());
+        if (graph.isAncestor(givenRow, currRow)) {
             System.out.println("Given branch is an ancestor of the current branch.");
-            System.exit(0);
+            return;
         }
-        if (split.getUID().equals(currCommit.getUID())) {
+        if (graph.isAncestor(currRow, givenRow)) {
+            stagingArea.unlock();
             checkoutBranch(branchName);
             System.out.println("Current branch fast-forwarded.");
-            System.exit(0);
+            return;
         }
 
-        for (String s : given.getFileMap().keySet()) {
-            if (split.getFileMap().containsKey(s) && currCommit.getFileMap().containsKey(s)) {
-                if (!split.getFileMap().get(s).equals(given.getFileMap().get(s)) &&
-                        split.getFileMap().get(s).equals(currCommit.getFileMap().get(s))) {
-                    copyFile(given.getFileMap().get(s));
-                    stagingArea.getStagingAdd().put(s, given.getFileMap().get(s));
-                }
-            }
-            if (!split.getFileMap().containsKey(s) && !currCommit.getFileMap().containsKey(s)) {
-                copyFile(given.getFileMap().get(s));
-                stagingArea.getStagingAdd().put(s, given.getFileMap().get(s));
+        /** Get split point: the best common ancestor of both heads */
+        Commit split = readCommit(graph.id(MergeBase.find(graph, currRow, givenRow).get(0)));
+
+        /** Only paths that differ between the split point and either side can need merging */
+        TreeMap<String, String[]> changed = Checkout.mergeChanges(split, currCommit, given);
+
+        boolean conflict = false;
+        List<String> contentMerges = new ArrayList<>();
+        for (Map.Entry<String, String[]> e : changed.entrySet()) {
+            String s = e.getKey();
+            String splitBlob = e.getValue()[0];
+            String currBlob = e.getValue()[1];
+            String givenBlob = e.getValue()[2];
+            if (Objects.equals(currBlob, givenBlob) || Objects.equals(splitBlob, givenBlob)) {
+                continue;
             }
-            if (currCommit.getFileMap().containsKey(s)) {
-                if (!currCommit.getFileMap().get(s).equals(given.getFileMap().get(s))) {
-                    mergeConflict(currCommit, given, s, stagingArea);
+            if (Objects.equals(splitBlob, currBlob)) {
+                /** Changed in the given branch only */
+                if (givenBlob == null) {
+                    Checkout.deleteWorkingFile(s);
+                    stagingArea.getStagingRemove().put(s, currBlob);
+                } else {
+                    copyFile(s, givenBlob);
+                    stagingArea.getStagingAdd().put(s, givenBlob);
                 }
+            } else if (currBlob == null || givenBlob == null) {
+                mergeConflict(s, currBlob, givenBlob, stagingArea);
+                conflict = true;
+            } else {
+                contentMerges.add(s);
             }
         }
-
-        for (String s : split.getFileMap().keySet()) {
-            if (currCommit.getFileMap().containsKey(s)) {
-                if (currCommit.getFileMap().get(s).equals(split.getFileMap().get(s)) &&
-                !given.getFileMap().containsKey(s)) {
-                    restrictedDelete(join(CWD, s));
-                    stagingArea.getStagingRemove().remove(s);
-                }
+        /** Files changed on both sides are merged line by line, in parallel */
+        ForkJoinPool pool = new ForkJoinPool(TreeScanner.parallelism());
+        try {
+            List<ForkJoinTask<Boolean>> tasks = new ArrayList<>();
+            for (String s : contentMerges) {
+                String[] blobs = changed.get(s);
+                tasks.add(pool.submit(() -> ThreeWayMerge.merge(blobs[0], blobs[1], blobs[2], join(CWD, s))));
             }
-            if (given.getFileMap().containsKey(s) && !currCommit.getFileMap().containsKey(s)) {
-                if (!split.getFileMap().get(s).equals(given.getFileMap().get(s))) {
-                    mergeConflict(currCommit, given, s, stagingArea);
-                }
+            List<ForkJoinTask<String>> stores = new ArrayList<>();
+            for (int i = 0; i < contentMerges.size(); i++) {
+                conflict |= tasks.get(i).join();
+                File file = join(CWD, contentMerges.get(i));
+                stores.add(pool.submit(() -> Blob.store(file)));
             }
-            if (currCommit.getFileMap().containsKey(s) && !given.getFileMap().containsKey(s)) {
-                if (!split.getFileMap().get(s).equals(currCommit.getFileMap().get(s))) {
-                    mergeConflict(currCommit, given, s, stagingArea);
-                }
+            for (int i = 0; i < contentMerges.size(); i++) {
+                stagingArea.getStagingAdd().put(contentMerges.get(i), stores.get(i).join());
             }
+        } finally {
+            pool.shutdown();
+        }
+        if (conflict) {
+            message("Encountered a merge conflict.");
         }
-        writeObject(INDEX,stagingArea);
+        stagingArea.save();
         Commit newCommit = new Commit("Merged "+ branchName +" into "+ currBranch +".",
-                currCommit.getUID(), currCommit.getFileMap());
+                currCommit.getUID(), stageTree(stagingArea, currCommit.getTreeID()));
         newCommit.setSecondParent(given.getUID());
-        stageCommit(newCommit);
         saveCommit(newCommit, currBranch);
         clearStaging(stagingArea);
     }
@@ -357,118 +554,132 @@ public class Gitlet implements Serializable {
     /** Helper methods */
 
     private void saveCommit(Commit commit, String branch) {
+        /** Load the commit-graph and commit index first: building either
+         *  takes the lock that is held below to append to it */
+        CommitGraph.get();
+        CommitIndex.get();
         /** Save commit as an object in commits folder */
-        File file = join(COMMIT_DIR, commit.getUID());
-        try {
-            file.createNewFile();
-            writeObject(file, commit);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        /** Store current branch head */
-        File branchname = join(HEADS_DIR, branch);
-        if (!branchname.exists()) {
-            try {
-                branchname.createNewFile();
-                writeContents(branchname, commit.getUID());
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        writeContents(branchname, commit.getUID());
+        ObjectStore.writeObject(ObjectStore.COMMIT, commit.getUID(), commit);
+        /** The appends to the commit-graph and commit index are serialized
+         *  with other processes; the object itself needs no lock */
+        LockFile graphLock = LockFile.acquire(COMMIT_GRAPH);
+        try (graphLock) {
+            CommitGraph.get().add(commit, graphLock);
+        }
+        LockFile indexLock = LockFile.acquire(COMMIT_INDEX_DIR);
+        try (indexLock) {
+            CommitIndex.append(commit);
+        }
+        /** Move the branch head, unless another process moved it first */
+        updateBranch(branch, commit.getParentID(), commit.getUID());
     }
 
-    /** Update fileMap in the current Commit */
-    private void stageCommit(Commit commit) {
-        Staging stagingArea = readObject(INDEX, Staging.class);
-        for (String a : stagingArea.getStagingAdd().keySet()) {
-            commit.getFileMap().put(a, stagingArea.getStagingAdd().get(a));
-        }
-        for (String a : stagingArea.getStagingRemove().keySet()) {
-            commit.getFileMap().remove(a);
+    /** Moves BRANCH from commit EXPECTED to commit ID, or deletes it if ID
+     *  is null, exiting if another process changed the branch first. */
+    private void updateBranch(String branch, String expected, String id) {
+        if (!Refs.compareAndSet(branch, expected, id)) {
+            exitWithError("Branch " + branch + " was updated by another process; try again.");
         }
     }
 
+    /** Returns the tree TREEID with the staged changes applied, sharing
+     *  every subtree the changes do not touch */
+    private String stageTree(Staging stagingArea, String treeID) {
+        return Tree.update(treeID, stagingArea.getStagingAdd(), stagingArea.getStagingRemove().keySet());
+    }
+
     private Commit getCurrentCommit() {
-        String currCommitID = readContentsAsString(join(GITLET_DIR, readContentsAsString(HEAD)));
-        return readObject(join(COMMIT_DIR, currCommitID), Commit.class);
+        return readCommit(getCurrentCommitID());
     }
 
-    private void copyFile(String blobUID) {
-        File file = join(BLOB_DIR, blobUID);
-        Blob blob = readObject(file, Blob.class);
-        File newFile = join(CWD, blob.getFilename());
-        if (newFile.exists()) {
-            writeContents(newFile, blob.getContent());
-        }
-        try {
-            newFile.createNewFile();
-            writeContents(newFile, blob.getContent());
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private String getCurrentCommitID() {
+        return readContentsAsString(join(GITLET_DIR, readContentsAsString(HEAD)));
     }
 
-    private void checkUntracked(Commit curr, Commit target, Staging sa) {
-        for (String s : plainFilenamesIn(CWD)) {
-            if (!sa.getStagingAdd().containsKey(s) && !curr.getFileMap().containsKey(s) && target.getFileMap().containsKey(s)) {
-                exitWithError("There is an untracked file in the way; delete it, or add and commit it first.");
-            }
-        }
+    private Commit readCommit(String commitID) {
+        return ObjectStore.readObject(ObjectStore.COMMIT, commitID, Commit.class);
+    }
+
+    /** Writes blob BLOBUID to working file FILENAME. */
+    private void copyFile(String filename, String blobUID) {
+        Blob.checkout(blobUID, join(CWD, filename));
     }
 
-    private void checkoutFiles(Commit curr, Commit target) {
-        for (String s : target.getFileMap().values()) {
-            copyFile(s);
+    /** Applies CHANGES to the working directory and reports how many
+     *  files that touched. */
+    private void checkoutFiles(TreeMap<String, String[]> changes) {
+        int n = Checkout.apply(changes);
+        System.out.println("Updated " + n + (n == 1 ? " file." : " files."));
+    }
+
+    /** Returns the full id of the commit whose id starts with COMMITID, at
+     *  least 4 hex digits long, or null if there is none. Exits listing the
+     *  candidates if the prefix is ambiguous. */
+    private String getFullCommitID(String commitID) {
+        if (commitID.length() < 4 || commitID.length() > UID_LENGTH
+                || !commitID.matches("[0-9a-fA-F]+")) {
+            return null;
         }
-        for (String s : curr.getFileMap().keySet()) {
-            if (!target.getFileMap().containsKey(s)) {
-                restrictedDelete(join(CWD, s));
+        List<String> candidates = CommitIndex.get().resolve(commitID);
+        if (candidates.size() > 1) {
+            StringBuilder msg = new StringBuilder("Commit id " + commitID + " is ambiguous; candidates are:");
+            for (String s : candidates) {
+                msg.append("\n  ").append(s);
             }
+            exitWithError(msg.toString());
         }
+        return candidates.isEmpty() ? null : candidates.get(0);
     }
 
-    private String getFullCommitID (List<String> commits, String commitID) {
-        if (commitID.length() == 6) {
-            for (String s : commits) {
-                if (s.contains(commitID)) { return s; }
-            }
-            return null;
-        } else if (commitID.length() == 40) {
-            if (commits.contains(commitID)) {
-                return commitID;
-            } else { return null; }
-        } else { return null; }
+    /** Returns the commit id named by REV, a branch name or a commit id. */
+    private String resolveRevision(String rev) {
+        if (join(HEADS_DIR, rev).isFile()) {
+            return readContentsAsString(join(HEADS_DIR, rev));
+        }
+        String s = getFullCommitID(rev);
+        if (s == null) {
+            exitWithError("No commit with that id exists.");
+        }
+        return s;
     }
 
     private void clearStaging(Staging sa) {
         sa.clearStage();
-        writeObject(INDEX, sa);
-    }
-
-    private void setHead(String branch) {
-        writeContents(HEAD, join("refs", "heads", branch).getPath());
+        sa.save();
     }
 
     private String currBranch() {
         return new File(readContentsAsString(HEAD)).getName();
     }
 
-    private void mergeConflict(Commit currCommit, Commit given, String s, Staging sa) {
-        message("Encountered a merge conflict.");
-        byte[] currentBytes = "".getBytes();
-        byte[] givenBytes = "".getBytes();
-        if (currCommit.getFileMap().containsKey(s)) {
-            currentBytes = readContents(join(BLOB_DIR, currCommit.getFileMap().get(s)));
+    /** Writes both versions of file S, one of which was deleted, between
+     *  conflict markers and stages the result. */
+    private void mergeConflict(String s, String currBlob, String givenBlob, Staging sa) {
+        File file = join(CWD, s);
+        file.getParentFile().mkdirs();
+        /** Each side is streamed, since either may be a chunked blob too large to hold in memory */
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, "<<<<<<< HEAD\n");
+            if (currBlob != null) {
+                Blob.copy(currBlob, out);
+            }
+            writeFully(out, "=======\n");
+            if (givenBlob != null) {
+                Blob.copy(givenBlob, out);
+            }
+            writeFully(out, ">>>>>>>\n");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
         }
-        if (given.getFileMap().containsKey(s)) {
-            givenBytes = readContents(join(BLOB_DIR, given.getFileMap().get(s)));
+        sa.getStagingAdd().put(s, Blob.store(file));
+    }
+
+    private static void writeFully(FileChannel out, String s) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+        while (b.hasRemaining()) {
+            out.write(b);
         }
-        File file = join(CWD, s);
-        writeContents(file, "<<<<<<< HEAD\n",currentBytes,"=======\n",givenBytes,">>>>>>>\n");
-        Blob blob = new Blob(s, file);
-        blob.storeBlob();
-        sa.getStagingAdd().put(s, blob.getUID());
     }
 
 }
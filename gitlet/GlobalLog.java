@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/** Prints every commit in the repository, decoding them on a pool of
+ *  worker threads.
+ *
+ *  Commits are taken in commit-graph row order, which lists every commit
+ *  once with parents before children, and cut into batches of BATCH rows.
+ *  Each worker reads, filters and formats a whole batch. Batches are
+ *  printed in the order they were cut, so the output does not depend on
+ *  the scheduling: finished batches wait in a reorder window until the
+ *  ones before them are printed, and no more than WINDOW_PER_THREAD
+ *  batches per thread are in flight, so memory stays bounded however many
+ *  commits there are. Decoded commits bypass the object cache, which a
+ *  full scan would only flush.
+ *
+ *  @LiZhu
+ */
+class GlobalLog {
+
+    private static final int BATCH = 256;
+    private static final int WINDOW_PER_THREAD = 4;
+
+    /** Prints the commits made at or after SINCE whose message contains
+     *  MESSAGE, or all of them if MESSAGE is null. */
+    static void print(long since, String message) {
+        CommitGraph graph = CommitGraph.get();
+        int rows = graph.size();
+        int threads = TreeScanner.parallelism();
+        if (threads == 1 || rows <= BATCH) {
+            try (ConsoleWriter out = new ConsoleWriter()) {
+                for (int from = 0; from < rows && !out.closed(); from += BATCH) {
+                    out.print(batch(graph, from, Math.min(rows, from + BATCH), since, message));
+                }
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        ArrayDeque<ForkJoinTask<String>> window = new ArrayDeque<>();
+        try (ConsoleWriter out = new ConsoleWriter()) {
+            int next = 0;
+            while ((next < rows || !window.isEmpty()) && !out.closed()) {
+                while (next < rows && window.size() < threads * WINDOW_PER_THREAD) {
+                    int from = next;
+                    int to = Math.min(rows, from + BATCH);
+                    window.add(pool.submit(() -> batch(graph, from, to, since, message)));
+                    next = to;
+                }
+                out.print(window.poll().join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Returns the log entries of the commits in graph rows FROM to TO that
+     *  pass the filters. */
+    private static String batch(CommitGraph graph, int from, int to, long since, String message) {
+        StringBuilder s = new StringBuilder();
+        for (int r = from; r < to; r++) {
+            if (graph.time(r) < since) {
+                continue;
+            }
+            Commit c = ObjectCodec.decode(ObjectStore.read(ObjectStore.COMMIT, graph.id(r)), Commit.class);
+            if (message == null || c.getCommitMessage().contains(message)) {
+                s.append(c.format(false));
+            }
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/** A lazy walk over the history of a commit, yielding the commit-graph rows
+ *  of the commits it reaches one at a time, so that a reader which stops
+ *  early never visits the rest of the history.
+ *
+ *  FIRST_PARENT follows only first parents. DATE_ORDER follows both
+ *  parents, newest commit time first. TOPO_ORDER follows both parents,
+ *  highest generation number first: a commit's generation is larger than
+ *  its parents', so every commit comes after all of its children without
+ *  the whole history having to be read first.
+ *
+ *  A commit made before SINCE is left out along with the history behind
+ *  it, as far as it is reached only through such commits.
+ *
+ *  @LiZhu
+ */
+class History implements Iterator<Integer> {
+
+    static final int FIRST_PARENT = 0;
+    static final int DATE_ORDER = 1;
+    static final int TOPO_ORDER = 2;
+
+    private final CommitGraph graph;
+    private final long since;
+    /** Rows waiting to be yielded, in the order of the walk; for
+     *  FIRST_PARENT it never holds more than one. */
+    private final PriorityQueue<Integer> queue;
+    /** Rows ever added to the queue. */
+    private final BitSet seen = new BitSet();
+    private final boolean firstParent;
+
+    History(CommitGraph graph, int start, int order, long since) {
+        this.graph = graph;
+        this.since = since;
+        this.firstParent = order == FIRST_PARENT;
+        Comparator<Integer> byTime = Comparator.comparingLong(graph::time);
+        Comparator<Integer> byGeneration = Comparator.comparingInt(graph::generation);
+        Comparator<Integer> newest = order == TOPO_ORDER ? byGeneration.thenComparing(byTime) : byTime;
+        this.queue = new PriorityQueue<>(newest.thenComparingInt(r -> r).reversed());
+        push(start);
+    }
+
+    private void push(int row) {
+        if (row != CommitGraph.NONE && !seen.get(row)) {
+            seen.set(row);
+            if (graph.time(row) >= since) {
+                queue.add(row);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !queue.isEmpty();
+    }
+
+    /** Returns the row of the next commit. */
+    @Override
+    public Integer next() {
+        Integer row = queue.poll();
+        if (row == null) {
+            throw new NoSuchElementException();
+        }
+        push(graph.parent(row));
+        if (!firstParent) {
+            push(graph.secondParent(row));
+        }
+        return row;
+    }
+}
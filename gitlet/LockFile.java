@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.Utils.*;
+
+/** A lock on one repository file, held by creating FILE.lock exclusively
+ *  (O_CREAT | O_EXCL), so that only one process at a time can update FILE.
+ *
+ *  New contents are written to the lock file and renamed over FILE, so
+ *  readers, which never lock, see either the old or the new contents.
+ *  Closing a lock that was not committed deletes the lock file and leaves
+ *  FILE as it was, which also makes a lock usable as a plain mutex.
+ *
+ *  A process that cannot get a lock retries for gitlet.lockTimeout
+ *  milliseconds (1000 by default) and then gives up. A lock file left by
+ *  a process that crashed has to be removed by hand.
+ *
+ *  @LiZhu
+ */
+class LockFile implements AutoCloseable {
+
+    private static final long TIMEOUT = Long.getLong("gitlet.lockTimeout", 1000);
+    private static final long RETRY_MILLIS = 10;
+    /** Appended to the name of a file to name its lock. */
+    static final String SUFFIX = ".lock";
+
+    /** Locks held by this process, so that they can be released when a
+     *  command fails part way. */
+    private static final Set<LockFile> held = ConcurrentHashMap.newKeySet();
+
+    private final File target;
+    private final File lock;
+
+    private LockFile(File target) {
+        this.target = target;
+        this.lock = new File(target.getPath() + SUFFIX);
+    }
+
+    /** Locks TARGET, waiting for another process to release it, and exits
+     *  if it is still locked after the timeout. */
+    static LockFile acquire(File target) {
+        return Trace.timed("lock", () -> waitFor(target));
+    }
+
+    private static LockFile waitFor(File target) {
+        LockFile l = new LockFile(target);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!l.create()) {
+            if (System.currentTimeMillis() >= deadline) {
+                exitWithError("Unable to lock " + target.getName() + ": " + l.lock.getName()
+                        + " exists. If no other gitlet process is running, delete it and try again.");
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                exitWithError("Interrupted while waiting for " + l.lock.getName() + ".");
+            }
+        }
+        return l;
+    }
+
+    /** Locks TARGET if no one else holds it, and returns null otherwise. */
+    static LockFile tryAcquire(File target) {
+        LockFile l = new LockFile(target);
+        return l.create() ? l : null;
+    }
+
+    private boolean create() {
+        try {
+            Files.createFile(lock.toPath());
+        } catch (FileAlreadyExistsException excp) {
+            return false;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        held.add(this);
+        return true;
+    }
+
+    /** Replaces the contents of the locked file with CONTENTS and releases
+     *  the lock. */
+    void commit(byte[] contents) {
+        try (FileChannel ch = FileChannel.open(lock.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(contents);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(false);
+            Trace.count(Trace.Counter.FILES_WRITTEN);
+            Trace.count(Trace.Counter.BYTES_WRITTEN, contents.length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(lock.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        held.remove(this);
+    }
+
+    /** Releases the lock without changing the locked file, if it is still
+     *  held. */
+    @Override
+    public void close() {
+        if (held.remove(this)) {
+            lock.delete();
+        }
+    }
+
+    /** Releases every lock this process still holds. */
+    static void releaseAll() {
+        for (LockFile l : held) {
+            l.close();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast LZ77 codec in the style of LZ4: no entropy coding, byte-aligned
+ *  sequences and a single hash probe per position, so it compresses less
+ *  than deflate but runs several times faster, especially decompressing.
+ *
+ *  Data is cut into blocks of BLOCK_SIZE bytes, compressed independently,
+ *  so streams of any length use bounded memory:
+ *
+ *  stream:    (varint raw length | varint stored length | data)... | 0
+ *  data:      the block itself if its stored length is 0, else sequences:
+ *  sequence:  token | [literal length bytes] | literals |
+ *             offset[2, little-endian] | [match length bytes]
+ *
+ *  The token holds the literal length and the match length minus
+ *  MIN_MATCH, 4 bits each; 15 means more length bytes follow, each added
+ *  until one is below 255. The last sequence of a block has literals only.
+ *
+ *  @LiZhu
+ */
+class LzCodec {
+
+    static final int BLOCK_SIZE = 1 << 16;
+    private static final int MIN_MATCH = 4;
+    /** The hash table has at most 2^HASH_BITS entries, and fewer for small
+     *  inputs, which are most objects. */
+    private static final int HASH_BITS = 14;
+    /** No match starts in the last bytes of a block, which keeps the match
+     *  search free of bounds checks on the 4-byte reads. */
+    private static final int LAST_LITERALS = 5;
+
+    /** Compresses LEN bytes of SRC at OFF into DST, which must hold at
+     *  least maxCompressed(LEN) bytes, and returns the compressed length. */
+    static int compress(byte[] src, int off, int len, byte[] dst) {
+        int bits = Math.max(8, Math.min(HASH_BITS, 32 - Integer.numberOfLeadingZeros(len)));
+        int[] table = new int[1 << bits];
+        Arrays.fill(table, -1);
+        int end = off + len;
+        int limit = end - LAST_LITERALS;
+        int anchor = off;
+        int out = 0;
+        int i = off;
+        while (i < limit - MIN_MATCH) {
+            int seq = readInt(src, i);
+            int h = (seq * 0x9E3779B1) >>> (32 - bits);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > 0xFFFF || readInt(src, ref) != seq) {
+                i++;
+                continue;
+            }
+            int matchLen = MIN_MATCH;
+            while (i + matchLen < limit && src[ref + matchLen] == src[i + matchLen]) {
+                matchLen++;
+            }
+            out = writeSequence(src, anchor, i - anchor, i - ref, matchLen, dst, out);
+            i += matchLen;
+            anchor = i;
+        }
+        return writeSequence(src, anchor, end - anchor, 0, 0, dst, out);
+    }
+
+    /** Returns the largest size LEN bytes can compress to. */
+    static int maxCompressed(int len) {
+        return len + len / 255 + 16;
+    }
+
+    private static int writeSequence(byte[] src, int literals, int litLen, int offset, int matchLen,
+                                     byte[] dst, int out) {
+        int token = out++;
+        int m = matchLen == 0 ? 0 : matchLen - MIN_MATCH;
+        dst[token] = (byte) (Math.min(litLen, 15) << 4 | Math.min(m, 15));
+        out = writeLength(litLen, dst, out);
+        System.arraycopy(src, literals, dst, out, litLen);
+        out += litLen;
+        if (matchLen > 0) {
+            dst[out++] = (byte) offset;
+            dst[out++] = (byte) (offset >>> 8);
+            out = writeLength(m, dst, out);
+        }
+        return out;
+    }
+
+    private static int writeLength(int len, byte[] dst, int out) {
+        if (len >= 15) {
+            for (len -= 15; len >= 255; len -= 255) {
+                dst[out++] = (byte) 255;
+            }
+            dst[out++] = (byte) len;
+        }
+        return out;
+    }
+
+    /** Decompresses LEN bytes of SRC into DST, which receives exactly
+     *  RAWLEN bytes. */
+    static void decompress(byte[] src, int len, byte[] dst, int rawLen) {
+        int in = 0;
+        int out = 0;
+        while (in < len) {
+            int token = src[in++] & 0xff;
+            int litLen = token >>> 4;
+            if (litLen == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xff;
+                    litLen += b;
+                } while (b == 255);
+            }
+            System.arraycopy(src, in, dst, out, litLen);
+            in += litLen;
+            out += litLen;
+            if (in >= len) {
+                break;
+            }
+            int offset = (src[in] & 0xff) | (src[in + 1] & 0xff) << 8;
+            in += 2;
+            int matchLen = token & 15;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    b = src[in++] & 0xff;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (offset >= matchLen) {
+                System.arraycopy(dst, out - offset, dst, out, matchLen);
+                out += matchLen;
+            } else {
+                /** The match overlaps its own output, so it repeats a period */
+                for (int k = 0; k < matchLen; k++, out++) {
+                    dst[out] = dst[out - offset];
+                }
+            }
+        }
+        if (out != rawLen) {
+            throw new IllegalArgumentException("corrupt compressed block");
+        }
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    /** Compresses everything written to it, block by block, onto OUT. */
+    static class Output extends OutputStream {
+        private final OutputStream out;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] packed = new byte[maxCompressed(BLOCK_SIZE)];
+        private int size;
+
+        Output(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (size == block.length) {
+                flushBlock();
+            }
+            block[size++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (size == block.length) {
+                    flushBlock();
+                }
+                int n = Math.min(len, block.length - size);
+                System.arraycopy(b, off, block, size, n);
+                size += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (size == 0) {
+                return;
+            }
+            int n = compress(block, 0, size, packed);
+            writeVarint(out, size);
+            if (n >= size) {
+                writeVarint(out, 0);
+                out.write(block, 0, size);
+            } else {
+                writeVarint(out, n);
+                out.write(packed, 0, n);
+            }
+            size = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flushBlock();
+            writeVarint(out, 0);
+            out.close();
+        }
+
+        private static void writeVarint(OutputStream out, int v) throws IOException {
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+        }
+    }
+
+    /** Reads the data compressed in IN, a block at a time. */
+    static class Input extends InputStream {
+        private final InputStream in;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] packed = new byte[maxCompressed(BLOCK_SIZE)];
+        private int size;
+        private int pos;
+        private boolean eof;
+
+        Input(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return block[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, size - pos);
+            System.arraycopy(block, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        /** Decodes the next block if the current one is used up, and
+         *  returns false at the end of the stream. */
+        private boolean fill() throws IOException {
+            while (pos == size && !eof) {
+                int raw = readVarint();
+                if (raw == 0) {
+                    eof = true;
+                    break;
+                }
+                int stored = readVarint();
+                if (raw > BLOCK_SIZE || stored > packed.length) {
+                    throw new IOException("corrupt compressed stream");
+                }
+                if (stored == 0) {
+                    readFully(block, raw);
+                } else {
+                    readFully(packed, stored);
+                    decompress(packed, stored, block, raw);
+                }
+                size = raw;
+                pos = 0;
+            }
+            return pos < size;
+        }
+
+        private int readVarint() throws IOException {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("truncated compressed stream");
+                }
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+        }
+
+        private void readFully(byte[] b, int len) throws IOException {
+            for (int off = 0; off < len; ) {
+                int n = in.read(b, off, len - off);
+                if (n < 0) {
+                    throw new IOException("truncated compressed stream");
+                }
+                off += n;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
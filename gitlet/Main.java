@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @LiZhu
@@ -11,6 +12,41 @@ public class Main {
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) throws IOException {
+        // Hand the command to a running daemon, if there is one
+        if (Daemon.forward(args)) {
+            return;
+        }
+        try {
+            run(args);
+        } catch (GitletException e) {
+            if (!e.getMessage().isEmpty()) {
+                System.out.println(e.getMessage());
+            }
+        } finally {
+            LockFile.releaseAll();
+        }
+    }
+
+    /** Runs the command in ARGS in this process, counting what it does and
+     *  reporting it if asked to, as Trace describes. */
+    static void run(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("daemon")) {
+            /** The daemon traces each command it serves instead */
+            dispatch(args);
+            return;
+        }
+        args = Trace.begin(args);
+        try {
+            dispatch(args);
+        } catch (GitletException e) {
+            Trace.fail(e.getMessage());
+            throw e;
+        } finally {
+            Trace.end(args);
+        }
+    }
+
+    private static void dispatch(String[] args) throws IOException {
        // If user input is empty, return error message and exit.
         if (args.length == 0) {
             Utils.exitWithError("Please enter a command.");
@@ -25,34 +61,35 @@ public class Main {
 
         switch(firstArg) {
             /** "init", "add", "commit", "rm", "log", "global-log",
-             * "find", "status", "checkout", "branch", "rm-branch", "reset", "merge" */
+             * "find", "status", "checkout", "branch", "rm-branch", "reset", "merge", "merge-base", "migrate", "repack", "daemon", "gc", "count", "diff", "config", "stats" */
             case "init":
                 validateNumArgs(args, 1);
                 gitlet.init();
                 break;
             case "add":
-                validateNumArgs(args, 2);
-                gitlet.add(args[1]);
+                if (args.length < 2) {
+                    Utils.exitWithError("Incorrect operands.");
+                }
+                gitlet.add(Arrays.asList(args).subList(1, args.length));
                 break;
             case "commit":
                 validateNumArgs(args, 2);
                 gitlet.commit(args[1]);
                 break;
             case "rm":
-                validateNumArgs(args, 2);
-                gitlet.rm(args[1]);
+                if (args.length < 2) {
+                    Utils.exitWithError("Incorrect operands.");
+                }
+                gitlet.rm(Arrays.asList(args).subList(1, args.length));
                 break;
             case "log":
-                validateNumArgs(args, 1);
-                gitlet.log();
+                log(gitlet, args);
                 break;
             case "global-log":
-                validateNumArgs(args, 1);
-                gitlet.globalLog();
+                globalLog(gitlet, args);
                 break;
             case "find":
-                validateNumArgs(args, 2);
-                gitlet.find(args[1]);
+                find(gitlet, args);
                 break;
             case "status":
                 validateNumArgs(args, 1);
@@ -91,9 +128,182 @@ public class Main {
                 validateNumArgs(args, 2);
                 gitlet.merge(args[1]);
                 break;
+            case "merge-base":
+                if (args.length == 4 && args[1].equals("--all")) {
+                    gitlet.mergeBase(args[2], args[3], true);
+                } else {
+                    validateNumArgs(args, 3);
+                    gitlet.mergeBase(args[1], args[2], false);
+                }
+                break;
+            case "count":
+                if (args.length > 2) {
+                    Utils.exitWithError("Incorrect operands.");
+                }
+                gitlet.count(args.length == 2 ? args[1] : null);
+                break;
+            case "diff":
+                if (args.length == 3) {
+                    gitlet.diff(args[1], args[2], false);
+                } else if (args.length == 2 && (args[1].equals("--cached") || args[1].equals("--staged"))) {
+                    gitlet.diff(null, null, true);
+                } else {
+                    validateNumArgs(args, 1);
+                    gitlet.diff(null, null, false);
+                }
+                break;
+            case "migrate":
+                validateNumArgs(args, 1);
+                gitlet.migrate();
+                break;
+            case "daemon":
+                if (args.length == 2 && args[1].equals("stop")) {
+                    Utils.exitWithError("No daemon is running.");
+                }
+                validateNumArgs(args, 1);
+                Daemon.serve();
+                break;
+            case "repack":
+                if (args.length == 2 && args[1].equals("-a")) {
+                    gitlet.repack(true);
+                } else {
+                    validateNumArgs(args, 1);
+                    gitlet.repack(false);
+                }
+                break;
+            case "gc":
+                if (args.length == 2 && (args[1].equals("--now") || args[1].equals("--auto"))) {
+                    gitlet.gc(args[1].equals("--now"), args[1].equals("--auto"));
+                } else {
+                    validateNumArgs(args, 1);
+                    gitlet.gc(false, false);
+                }
+                break;
+            case "config":
+                if (args.length == 3 && args[1].equals("--unset")) {
+                    gitlet.unsetConfig(args[2]);
+                } else if (args.length == 2 || args.length == 3) {
+                    gitlet.config(args[1], args.length == 3 ? args[2] : null);
+                } else {
+                    Utils.exitWithError("Incorrect operands.");
+                }
+                break;
+            case "stats":
+                validateNumArgs(args, 1);
+                gitlet.stats();
+                break;
             default:
                 Utils.exitWithError("No command with that name exists.");
         }
+        // Commands that store objects may have pushed the loose-object count over the gc threshold
+        if (firstArg.equals("add") || firstArg.equals("commit") || firstArg.equals("merge")) {
+            GarbageCollector.autoGc();
+        }
+    }
+
+    /** log [--first-parent | --date-order | --topo-order] [-n LIMIT] [--skip N] [--since DATE] [--oneline] */
+    private static void log(Gitlet gitlet, String[] args) {
+        int order = History.FIRST_PARENT;
+        int skip = 0;
+        int limit = Integer.MAX_VALUE;
+        long since = Long.MIN_VALUE;
+        boolean oneline = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--first-parent":
+                    order = History.FIRST_PARENT;
+                    break;
+                case "--date-order":
+                    order = History.DATE_ORDER;
+                    break;
+                case "--topo-order":
+                    order = History.TOPO_ORDER;
+                    break;
+                case "-n":
+                    limit = count(args, ++i);
+                    break;
+                case "--skip":
+                    skip = count(args, ++i);
+                    break;
+                case "--since":
+                    if (i + 1 == args.length) {
+                        Utils.exitWithError("Incorrect operands.");
+                    }
+                    since = CommitIndex.parseDate(args[++i]);
+                    break;
+                case "--oneline":
+                    oneline = true;
+                    break;
+                default:
+                    Utils.exitWithError("Incorrect operands.");
+            }
+        }
+        gitlet.log(order, skip, limit, since, oneline);
+    }
+
+    /** global-log [--since DATE] [--message TEXT] */
+    private static void globalLog(Gitlet gitlet, String[] args) {
+        long since = Long.MIN_VALUE;
+        String message = null;
+        for (int i = 1; i < args.length; i++) {
+            if (i + 1 == args.length) {
+                Utils.exitWithError("Incorrect operands.");
+            }
+            switch (args[i]) {
+                case "--since":
+                    since = CommitIndex.parseDate(args[++i]);
+                    break;
+                case "--message":
+                    message = args[++i];
+                    break;
+                default:
+                    Utils.exitWithError("Incorrect operands.");
+            }
+        }
+        gitlet.globalLog(since, message);
+    }
+
+    /** Returns ARGS[I], which must be a count. */
+    private static int count(String[] args, int i) {
+        if (i >= args.length || !args[i].matches("\\d{1,9}")) {
+            Utils.exitWithError("Incorrect operands.");
+        }
+        return Integer.parseInt(args[i]);
+    }
+
+    /** find [--substring | --regex] [--since DATE] [--until DATE] [-n LIMIT] [commit message] */
+    private static void find(Gitlet gitlet, String[] args) {
+        int mode = CommitIndex.EXACT;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        int limit = Integer.MAX_VALUE;
+        int i = 1;
+        while (i < args.length - 1 && args[i].startsWith("-")) {
+            switch (args[i]) {
+                case "--substring":
+                    mode = CommitIndex.SUBSTRING;
+                    break;
+                case "--regex":
+                    mode = CommitIndex.REGEX;
+                    break;
+                case "--since":
+                    since = CommitIndex.parseDate(args[++i]);
+                    break;
+                case "--until":
+                    until = CommitIndex.parseDate(args[++i]);
+                    break;
+                case "-n":
+                    limit = count(args, ++i);
+                    break;
+                default:
+                    Utils.exitWithError("Incorrect operands.");
+            }
+            i++;
+        }
+        if (i != args.length - 1) {
+            Utils.exitWithError("Incorrect operands.");
+        }
+        gitlet.find(args[i], mode, since, until, limit);
     }
 
     public static void validateNumArgs(String[] args, int n) {
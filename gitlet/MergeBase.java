@@ -0,0 +1,119 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** Finds lowest common ancestors of two commits in the commit-graph.
+ *
+ *  Both commits are walked at once, highest generation first, painting
+ *  every commit reached with the colour of the side it was reached from.
+ *  A commit painted with both colours is a common ancestor; its own
+ *  ancestors are painted stale, and the walk stops once only stale commits
+ *  remain queued, which a count of the queued commits that are not stale
+ *  tells without scanning the queue. A commit is queued at most once at a
+ *  time. Only the commit-graph is read, never commit objects.
+ *
+ *  @LiZhu
+ */
+class MergeBase {
+
+    /** Returns the merge bases of the commits at rows A and B, best first.
+     *  There may be more than one in criss-cross histories. */
+    static List<Integer> find(CommitGraph graph, int a, int b) {
+        return Trace.timed("merge-base", () -> findBases(graph, a, b));
+    }
+
+    private static List<Integer> findBases(CommitGraph graph, int a, int b) {
+        List<Integer> result = new ArrayList<>();
+        if (a == b) {
+            result.add(a);
+            return result;
+        }
+        BitSet left = new BitSet(graph.size());
+        BitSet right = new BitSet(graph.size());
+        BitSet stale = new BitSet(graph.size());
+        BitSet found = new BitSet(graph.size());
+        BitSet queued = new BitSet(graph.size());
+        PriorityQueue<Integer> queue = new PriorityQueue<>(byGeneration(graph));
+        left.set(a);
+        right.set(b);
+        queue.add(a);
+        queue.add(b);
+        queued.set(a);
+        queued.set(b);
+        int nonStale = 2;
+        while (nonStale > 0) {
+            int r = queue.poll();
+            queued.clear(r);
+            boolean isStale = stale.get(r);
+            if (!isStale) {
+                nonStale--;
+            }
+            if (left.get(r) && right.get(r) && !isStale) {
+                if (!found.get(r)) {
+                    found.set(r);
+                    result.add(r);
+                }
+                stale.set(r);
+                isStale = true;
+            }
+            for (int p : new int[] {graph.parent(r), graph.secondParent(r)}) {
+                if (p == CommitGraph.NONE) {
+                    continue;
+                }
+                boolean changed = false;
+                if (left.get(r) && !left.get(p)) {
+                    left.set(p);
+                    changed = true;
+                }
+                if (right.get(r) && !right.get(p)) {
+                    right.set(p);
+                    changed = true;
+                }
+                if (isStale && !stale.get(p)) {
+                    stale.set(p);
+                    changed = true;
+                    if (queued.get(p)) {
+                        nonStale--;
+                    }
+                }
+                if (changed && !queued.get(p)) {
+                    queue.add(p);
+                    queued.set(p);
+                    if (!stale.get(p)) {
+                        nonStale++;
+                    }
+                }
+            }
+        }
+        return removeRedundant(graph, result);
+    }
+
+    /** Drops every candidate that is an ancestor of another candidate. */
+    private static List<Integer> removeRedundant(CommitGraph graph, List<Integer> candidates) {
+        List<Integer> bases = new ArrayList<>();
+        for (int c : candidates) {
+            boolean redundant = false;
+            for (int other : candidates) {
+                if (other != c && graph.isAncestor(c, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                bases.add(c);
+            }
+        }
+        bases.sort(byGeneration(graph));
+        return bases;
+    }
+
+    /** Orders rows by decreasing generation, then decreasing commit time. */
+    private static Comparator<Integer> byGeneration(CommitGraph graph) {
+        return Comparator.comparingInt((Integer r) -> -graph.generation(r))
+                .thenComparingLong(r -> -graph.time(r));
+    }
+}
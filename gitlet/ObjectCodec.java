@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.Serializable;
+
+/** Converts gitlet objects to and from their binary encoding.
+ *
+ *  Every encoded object starts with a type tag and a version byte. Files
+ *  written by Java serialization start with 0xACED instead, and are still
+ *  read so that old repositories can be migrated.
+ *
+ *  @LiZhu
+ */
+class ObjectCodec {
+
+    static final int COMMIT = 1;
+    static final int BLOB = 2;
+    static final int TREE = 3;
+    static final int STAGING = 4;
+    static final int MANIFEST = 5;
+
+    /** Returns the encoding of OBJ. */
+    static byte[] encode(Serializable obj) {
+        ObjectWriter out = new ObjectWriter(256);
+        if (obj instanceof Commit) {
+            ((Commit) obj).write(out);
+        } else if (obj instanceof Tree) {
+            ((Tree) obj).write(out);
+        } else if (obj instanceof Staging) {
+            ((Staging) obj).write(out);
+        } else if (obj instanceof ChunkedBlob) {
+            ((ChunkedBlob) obj).write(out);
+        } else {
+            throw new IllegalArgumentException("cannot encode " + obj.getClass());
+        }
+        Trace.count(Trace.Counter.OBJECTS_ENCODED);
+        return out.toByteArray();
+    }
+
+    /** Returns the object encoded in DATA, casting it to EXPECTEDCLASS. */
+    static <T extends Serializable> T decode(byte[] data, Class<T> expectedClass) {
+        if (isLegacy(data)) {
+            return Utils.deserialize(data, expectedClass);
+        }
+        ObjectReader in = new ObjectReader(data);
+        Object result;
+        switch (data.length == 0 ? -1 : data[0]) {
+            case COMMIT:
+                result = new Commit(in);
+                break;
+            case BLOB:
+                result = new Blob(in);
+                break;
+            case TREE:
+                result = new Tree(in);
+                break;
+            case STAGING:
+                result = new Staging(in);
+                break;
+            case MANIFEST:
+                result = new ChunkedBlob(in);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown object encoding");
+        }
+        Trace.count(Trace.Counter.OBJECTS_DECODED);
+        try {
+            return expectedClass.cast(result);
+        } catch (ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns true if DATA was written by Java serialization. */
+    static boolean isLegacy(byte[] data) {
+        return data.length >= 2 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED;
+    }
+}
@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+
+/** Reads the encoding written by ObjectWriter straight out of a byte
+ *  array, allocating only the strings and arrays it returns.
+ *
+ *  @LiZhu
+ */
+class ObjectReader {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] buf;
+    private int pos;
+
+    ObjectReader(byte[] buf) {
+        this.buf = buf;
+    }
+
+    /** Checks that the object starts with TAG and a version no newer than
+     *  VERSION, and returns its version. */
+    int readHeader(int tag, int version) {
+        int t = readByte();
+        int v = readByte();
+        if (t != tag) {
+            throw new IllegalArgumentException("unexpected object type " + t);
+        }
+        if (v < 1 || v > version) {
+            throw new IllegalArgumentException("unsupported object version " + v);
+        }
+        return v;
+    }
+
+    int readByte() {
+        return buf[pos++] & 0xff;
+    }
+
+    long readVarint() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    String readString() {
+        int n = (int) readVarint();
+        String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+        pos += n;
+        return s;
+    }
+
+    String readHash() {
+        char[] hex = new char[Utils.UID_LENGTH];
+        for (int i = 0; i < hex.length; i += 2) {
+            int b = buf[pos++];
+            hex[i] = HEX[(b >> 4) & 0xf];
+            hex[i + 1] = HEX[b & 0xf];
+        }
+        return new String(hex);
+    }
+
+    String readOptionalHash() {
+        return readByte() == 0 ? null : readHash();
+    }
+
+    byte[] readBytes(int n) {
+        byte[] b = new byte[n];
+        System.arraycopy(buf, pos, b, 0, n);
+        pos += n;
+        return b;
+    }
+}
@@ -0,0 +1,311 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import static gitlet.Repository.*;
+import static gitlet.Utils.*;
+
+/** The object database: loose objects, one file each under COMMIT_DIR,
+ *  BLOB_DIR, TREE_DIR, CHUNK_DIR and MANIFEST_DIR, plus any number of
+ *  packfiles under PACK_DIR. Loose objects take precedence over packed
+ *  ones, and are compressed as Compression describes.
+ *
+ *  @LiZhu
+ */
+class ObjectStore {
+
+    /** Object types, as recorded in packfiles. */
+    static final int COMMIT = 1;
+    static final int BLOB = 2;
+    static final int TREE = 3;
+    /** The pieces and manifests of chunked blobs; see ChunkedBlob. */
+    static final int CHUNK = 4;
+    static final int MANIFEST = 5;
+    static final int[] TYPES = {COMMIT, BLOB, TREE, CHUNK, MANIFEST};
+
+    /** Packs currently known, loaded on first use and reloaded whenever
+     *  PACK_DIR changes. */
+    private static List<PackFile> packs;
+    private static long packsModified;
+
+    /** Size above which a blob is never packed, set with the
+     *  gitlet.bigFileThreshold property. */
+    static final long BIG_FILE_THRESHOLD = Long.getLong("gitlet.bigFileThreshold", 32L << 20);
+
+    /** Number of decoded commits and trees kept in memory, set with the
+     *  gitlet.objectCache property. */
+    private static final int CACHE_SIZE = Integer.getInteger("gitlet.objectCache", 4096);
+
+    /** Recently read commits and trees, least recently used first. Objects
+     *  never change once written, so entries need no invalidation. */
+    private static final Map<String, Serializable> cache = Collections.synchronizedMap(
+        new LinkedHashMap<String, Serializable>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Serializable> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        });
+
+    /** Returns the directory holding loose objects of TYPE. */
+    static File looseDir(int type) {
+        switch (type) {
+            case COMMIT:
+                return COMMIT_DIR;
+            case BLOB:
+                return BLOB_DIR;
+            case TREE:
+                return TREE_DIR;
+            case CHUNK:
+                return CHUNK_DIR;
+            case MANIFEST:
+                return MANIFEST_DIR;
+            default:
+                throw new IllegalArgumentException("unknown object type " + type);
+        }
+    }
+
+    /** Returns the raw contents of object ID of TYPE. */
+    static byte[] read(int type, String id) {
+        File loose = join(looseDir(type), id);
+        if (loose.isFile()) {
+            return Compression.read(loose);
+        }
+        for (PackFile p : packs()) {
+            byte[] data = p.read(type, id);
+            if (data != null) {
+                Trace.count(Trace.Counter.PACKED_READS);
+                return data;
+            }
+        }
+        throw new IllegalArgumentException("object " + id + " not found");
+    }
+
+    /** Returns commit or tree ID of TYPE, casting it to EXPECTEDCLASS. */
+    static <T extends Serializable> T readObject(int type, String id, Class<T> expectedClass) {
+        Serializable obj = cache.get(id);
+        if (obj == null) {
+            Trace.count(Trace.Counter.CACHE_MISSES);
+            obj = ObjectCodec.decode(read(type, id), expectedClass);
+            cache.put(id, obj);
+        } else {
+            Trace.count(Trace.Counter.CACHE_HITS);
+        }
+        return expectedClass.cast(obj);
+    }
+
+    /** Stores OBJ as loose object ID of TYPE. */
+    static void writeObject(int type, String id, Serializable obj) {
+        File tmp = tempFile(type, id);
+        Compression.write(tmp, ObjectCodec.encode(obj));
+        install(tmp, type, id);
+    }
+
+    /** Returns a new, empty temporary file to write object ID of TYPE to
+     *  before installing it. Each writer gets its own, so objects can be
+     *  written without locks: two processes storing the same object write
+     *  the same bytes, and whichever rename comes last wins harmlessly. */
+    static File tempFile(int type, String id) {
+        try {
+            return Files.createTempFile(looseDir(type).toPath(), id, ".tmp").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames TMP, from tempFile, into place as loose object ID of TYPE. */
+    static void install(File tmp, int type, String id) {
+        try {
+            Files.move(tmp.toPath(), join(looseDir(type), id).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of the loose objects of TYPE, leaving out temporary
+     *  files of writes in progress. Repositories that never stored a chunked
+     *  blob may have no CHUNK_DIR or MANIFEST_DIR. */
+    static List<String> looseIds(int type) {
+        List<String> ids = new ArrayList<>();
+        List<String> names = plainFilenamesIn(looseDir(type));
+        for (String s : names == null ? List.<String>of() : names) {
+            if (s.length() == UID_LENGTH) {
+                ids.add(s);
+            }
+        }
+        return ids;
+    }
+
+    static boolean contains(int type, String id) {
+        if (join(looseDir(type), id).isFile()) {
+            return true;
+        }
+        for (PackFile p : packs()) {
+            if (p.find(type, id) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the ids of all objects of TYPE, loose and packed, sorted. */
+    static List<String> list(int type) {
+        TreeSet<String> ids = new TreeSet<>(looseIds(type));
+        for (PackFile p : packs()) {
+            for (int i = 0; i < p.size(); i++) {
+                if (p.typeAt(i) == type) {
+                    ids.add(p.idAt(i));
+                }
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Returns the packs, (re)loading them if needed. Synchronized, since
+     *  objects are read from several threads at once. */
+    static synchronized List<PackFile> packs() {
+        if (packs != null && PACK_DIR.lastModified() != packsModified) {
+            packs = null;
+        }
+        if (packs == null) {
+            packsModified = PACK_DIR.lastModified();
+            packs = new ArrayList<>();
+            List<String> files = plainFilenamesIn(PACK_DIR);
+            if (files != null) {
+                for (String s : files) {
+                    if (s.endsWith(".idx")) {
+                        packs.add(new PackFile(join(PACK_DIR, s)));
+                    }
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Rewrites every object stored in an older format, loose or packed:
+     *  commits and trees written with Java serialization, and blobs that
+     *  were encoded objects rather than raw contents. Loose objects with a
+     *  compression header are current already. Returns the number
+     *  converted. */
+    static int migrate() {
+        int count = 0;
+        for (int type : new int[] {COMMIT, BLOB, TREE}) {
+            for (String id : looseIds(type)) {
+                File f = join(looseDir(type), id);
+                if (Compression.codecOf(f) != null || (type == BLOB && Blob.hash(f).equals(id))) {
+                    continue;
+                }
+                byte[] data = upgrade(type, id, readContents(f));
+                if (data != null) {
+                    Compression.write(f, data);
+                    count++;
+                }
+            }
+        }
+        /** Packs holding old objects are unpacked, converted and packed again */
+        List<PackFile> legacy = new ArrayList<>();
+        for (PackFile p : packs()) {
+            for (int i = 0; i < p.size(); i++) {
+                if (upgrade(p.typeAt(i), p.idAt(i), p.readAt(i)) != null) {
+                    legacy.add(p);
+                    break;
+                }
+            }
+        }
+        for (PackFile p : legacy) {
+            for (int i = 0; i < p.size(); i++) {
+                String id = p.idAt(i);
+                File f = join(looseDir(p.typeAt(i)), id);
+                byte[] data = p.readAt(i);
+                byte[] upgraded = upgrade(p.typeAt(i), id, data);
+                if (upgraded != null) {
+                    data = upgraded;
+                    count++;
+                }
+                if (!f.isFile()) {
+                    Compression.write(f, data);
+                }
+            }
+            p.getPackFile().delete();
+            join(PACK_DIR, p.getPackFile().getName().replace(".pack", ".idx")).delete();
+        }
+        packs = null;
+        if (!legacy.isEmpty()) {
+            repack(true);
+        }
+        return count;
+    }
+
+    /** Returns DATA, the stored form of object ID of TYPE, converted to the
+     *  current format, or null if it is in the current format already. */
+    private static byte[] upgrade(int type, String id, byte[] data) {
+        if (type == BLOB) {
+            return sha1(data).equals(id) ? null : ObjectCodec.decode(data, Blob.class).getContent();
+        }
+        return ObjectCodec.isLegacy(data) ? ObjectCodec.encode(deserialize(data, Serializable.class)) : null;
+    }
+
+    /** Folds all loose objects into a new pack and removes them. If ALL,
+     *  existing packs are merged into it as well. Blobs larger than
+     *  BIG_FILE_THRESHOLD stay loose, so that checking them out remains a
+     *  file-to-file copy. Returns the number of objects written. */
+    static int repack(boolean all) {
+        return repack(all, id -> true);
+    }
+
+    /** Like repack(ALL), but drops the objects of existing packs whose id
+     *  does not satisfy KEEP. A pack left with nothing to keep is deleted.
+     *  Objects are told apart by type and id, since a manifest has the id
+     *  of its blob. */
+    static int repack(boolean all, Predicate<String> keep) {
+        PACK_DIR.mkdir();
+        Map<String, PackFile.Entry> entries = new LinkedHashMap<>();
+        List<File> loose = new ArrayList<>();
+        for (int type : TYPES) {
+            for (String id : looseIds(type)) {
+                File f = join(looseDir(type), id);
+                if (type == BLOB && f.length() > BIG_FILE_THRESHOLD) {
+                    continue;
+                }
+                loose.add(f);
+                entries.put(type + id, new PackFile.Entry(id, type, f.length(), () -> Compression.read(f)));
+            }
+        }
+        List<PackFile> old = all ? new ArrayList<>(packs()) : new ArrayList<>();
+        for (PackFile p : old) {
+            for (int i = 0; i < p.size(); i++) {
+                String id = p.idAt(i);
+                int type = p.typeAt(i);
+                int row = i;
+                if (!entries.containsKey(type + id) && keep.test(id)) {
+                    entries.put(type + id, new PackFile.Entry(id, type, 0, () -> p.readAt(row)));
+                }
+            }
+        }
+        List<File> written = PackFile.write(PACK_DIR, new ArrayList<>(entries.values()));
+        for (PackFile p : old) {
+            File pack = p.getPackFile();
+            File oldIdx = join(PACK_DIR, pack.getName().replace(".pack", ".idx"));
+            if (!written.contains(oldIdx)) {
+                oldIdx.delete();
+                pack.delete();
+            }
+        }
+        for (File f : loose) {
+            f.delete();
+        }
+        packs = null;
+        return entries.size();
+    }
+}
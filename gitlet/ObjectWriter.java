@@ -0,0 +1,79 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Writes the compact binary encoding of gitlet objects: varints,
+ *  length-prefixed UTF-8 strings and raw 20-byte hashes, into a growable
+ *  buffer.
+ *
+ *  @LiZhu
+ */
+class ObjectWriter {
+
+    private byte[] buf;
+    private int size;
+
+    ObjectWriter(int capacity) {
+        this.buf = new byte[Math.max(16, capacity)];
+    }
+
+    void writeByte(int b) {
+        ensure(1);
+        buf[size++] = (byte) b;
+    }
+
+    /** Writes V as an unsigned LEB128 varint. */
+    void writeVarint(long v) {
+        ensure(10);
+        while ((v & ~0x7FL) != 0) {
+            buf[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[size++] = (byte) v;
+    }
+
+    void writeString(String s) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        writeVarint(b.length);
+        writeBytes(b);
+    }
+
+    /** Writes the 40-digit hexadecimal ID as 20 raw bytes. */
+    void writeHash(String id) {
+        if (id.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("not a hash: " + id);
+        }
+        ensure(Utils.UID_LENGTH / 2);
+        for (int i = 0; i < Utils.UID_LENGTH; i += 2) {
+            buf[size++] = (byte) ((Character.digit(id.charAt(i), 16) << 4)
+                    | Character.digit(id.charAt(i + 1), 16));
+        }
+    }
+
+    /** Writes ID, which may be null, preceded by a presence byte. */
+    void writeOptionalHash(String id) {
+        if (id == null) {
+            writeByte(0);
+        } else {
+            writeByte(1);
+            writeHash(id);
+        }
+    }
+
+    void writeBytes(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, size, b.length);
+        size += b.length;
+    }
+
+    byte[] toByteArray() {
+        return buf.length == size ? buf : Arrays.copyOf(buf, size);
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+        }
+    }
+}
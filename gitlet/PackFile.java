@@ -0,0 +1,452 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static gitlet.Utils.*;
+
+/** A packfile: many objects stored in one zlib-compressed file, optionally
+ *  as deltas against similar objects, together with its sorted .idx.
+ *
+ *  pack-<name>.pack:  "PACK" | version | count | entries... | sha1 trailer
+ *      entry:         type | kind | varint size | [varint base distance] | zlib data
+ *  pack-<name>.idx:   "GIDX" | version | fanout[256] | ids[n * 20] | offsets[n * 8]
+ *
+ *  Both files are memory-mapped; lookups binary-search the id table inside
+ *  the bucket given by the fanout table.
+ *
+ *  @LiZhu
+ */
+class PackFile {
+
+    private static final int PACK_MAGIC = 0x5041434b; // "PACK"
+    private static final int IDX_MAGIC = 0x47494458;  // "GIDX"
+    private static final int VERSION = 1;
+    private static final int FULL = 0;
+    private static final int DELTA = 1;
+    /** Number of preceding objects tried as delta bases. */
+    private static final int WINDOW = 10;
+    /** Longest allowed chain of deltas. */
+    private static final int MAX_DEPTH = 16;
+    private static final int ID_BYTES = UID_LENGTH / 2;
+    private static final int FANOUT_START = 8;
+    /** Size at which a pack being written is closed and the next one
+     *  started, set with the gitlet.maxPackSize property. Objects are
+     *  at most BIG_FILE_THRESHOLD, so a pack never reaches the 2 GB that a
+     *  mapped buffer and the int offsets into it can address. */
+    private static final long MAX_PACK_SIZE = Math.min(Long.getLong("gitlet.maxPackSize", 1L << 30), 1L << 30);
+    private static final int IDS_START = FANOUT_START + 256 * 4;
+
+    private final File packFile;
+    private final MappedByteBuffer idx;
+    private MappedByteBuffer pack;
+    private final int count;
+
+    /** Opens the pack whose index is IDXFILE. */
+    PackFile(File idxFile) {
+        String name = idxFile.getName();
+        this.packFile = new File(idxFile.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        this.idx = map(idxFile);
+        if (idx.getInt(0) != IDX_MAGIC || idx.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("bad pack index " + idxFile);
+        }
+        this.count = idx.getInt(FANOUT_START + 255 * 4);
+    }
+
+    int size() {
+        return count;
+    }
+
+    File getPackFile() {
+        return packFile;
+    }
+
+    /** Returns the id of the Ith object in sorted order. */
+    String idAt(int i) {
+        byte[] raw = new byte[ID_BYTES];
+        idx.get(IDS_START + i * ID_BYTES, raw);
+        return toHex(raw);
+    }
+
+    /** Returns the type of the Ith object in sorted order. */
+    int typeAt(int i) {
+        return pack().get((int) offsetAt(i));
+    }
+
+    /** Returns the position of object ID of TYPE in the index, or -1. A
+     *  manifest shares its id with the blob it describes, so a pack may
+     *  hold one id under two types, at neighbouring positions. */
+    int find(int type, String id) {
+        byte[] raw = fromHex(id);
+        int i = find(id);
+        if (i < 0) {
+            return -1;
+        }
+        while (i > 0 && compareId(i - 1, raw) == 0) {
+            i--;
+        }
+        for (; i < count && compareId(i, raw) == 0; i++) {
+            if (typeAt(i) == type) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the position of some object with id ID in the index, or -1. */
+    private int find(String id) {
+        byte[] raw = fromHex(id);
+        int first = raw[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, raw);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the contents of object ID of TYPE, or null if it is not in
+     *  this pack. */
+    byte[] read(int type, String id) {
+        int i = find(type, id);
+        return i < 0 ? null : readAt(i);
+    }
+
+    /** Returns the contents of the Ith object in sorted order. */
+    byte[] readAt(int i) {
+        return readEntry((int) offsetAt(i));
+    }
+
+    private byte[] readEntry(int offset) {
+        ByteBuffer in = pack().duplicate();
+        in.position(offset + 1);
+        int kind = in.get();
+        int size = (int) Delta.readVarint(in);
+        if (kind == DELTA) {
+            int base = offset - (int) Delta.readVarint(in);
+            return Delta.apply(readEntry(base), inflate(in, size));
+        }
+        return inflate(in, size);
+    }
+
+    private static byte[] inflate(ByteBuffer in, int size) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in);
+            byte[] result = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                n += inflater.inflate(result, n, size - n);
+            }
+            if (n != size) {
+                throw new IllegalArgumentException("corrupt pack entry");
+            }
+            return result;
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private int fanout(int b) {
+        return idx.getInt(FANOUT_START + b * 4);
+    }
+
+    private long offsetAt(int i) {
+        return idx.getLong(IDS_START + count * ID_BYTES + i * 8);
+    }
+
+    private int compareId(int i, byte[] raw) {
+        int base = IDS_START + i * ID_BYTES;
+        for (int k = 0; k < ID_BYTES; k++) {
+            int cmp = Integer.compare(idx.get(base + k) & 0xff, raw[k] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    private MappedByteBuffer pack() {
+        if (pack == null) {
+            pack = map(packFile);
+        }
+        return pack;
+    }
+
+    /* WRITING */
+
+    /** An object to be written into a pack. DATA is only loaded while the
+     *  object is inside the delta window. */
+    static class Entry {
+        final String id;
+        final int type;
+        final long size;
+        final Supplier<byte[]> data;
+
+        Entry(String id, int type, long size, Supplier<byte[]> data) {
+            this.id = id;
+            this.type = type;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    /** A recently written object that may serve as a delta base. */
+    private static class Base {
+        final int type;
+        final byte[] data;
+        final int offset;
+        final int depth;
+
+        Base(int type, byte[] data, int offset, int depth) {
+            this.type = type;
+            this.data = data;
+            this.offset = offset;
+            this.depth = depth;
+        }
+    }
+
+    /** Writes ENTRIES as new packs in DIR and returns their index files.
+     *  Objects are ordered by type and decreasing size so that each one is
+     *  deltified against a larger, similar object that precedes it. A pack
+     *  is closed once it reaches MAX_PACK_SIZE and the rest go into another,
+     *  so that offsets stay within what a mapped buffer can address. */
+    static List<File> write(File dir, List<Entry> entries) {
+        List<Entry> order = new ArrayList<>(entries);
+        order.sort(Comparator.comparingInt((Entry e) -> e.type)
+                .thenComparing(e -> -e.size)
+                .thenComparing(e -> e.id));
+        List<File> written = new ArrayList<>();
+        for (int from = 0; from < order.size(); ) {
+            from = write(dir, order, from, written);
+        }
+        return written;
+    }
+
+    /** Writes ORDER from position FROM on as one pack in DIR, adds its
+     *  index file to WRITTEN and returns the position where it stopped. */
+    private static int write(File dir, List<Entry> order, int from, List<File> written) {
+        File tmpPack = tempFile(dir);
+        List<String> ids = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        ArrayDeque<Base> window = new ArrayDeque<>();
+        Deflater deflater = new Deflater();
+        int next = from;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmpPack.toPath())))) {
+            out.writeInt(PACK_MAGIC);
+            out.writeInt(VERSION);
+            /** The count, patched in once known */
+            out.writeInt(0);
+            for (; next < order.size() && out.size() < MAX_PACK_SIZE; next++) {
+                Entry e = order.get(next);
+                byte[] data = e.data.get();
+                int offset = out.size();
+                ByteArrayOutputStream entry = new ByteArrayOutputStream();
+                Base best = null;
+                byte[] bestDelta = null;
+                for (Base b : window) {
+                    if (b.type != e.type || b.depth >= MAX_DEPTH) {
+                        continue;
+                    }
+                    byte[] delta = Delta.create(b.data, data);
+                    if (delta.length < data.length / 2
+                            && (bestDelta == null || delta.length < bestDelta.length)) {
+                        best = b;
+                        bestDelta = delta;
+                    }
+                }
+                entry.write(e.type);
+                if (best == null) {
+                    entry.write(FULL);
+                    Delta.writeVarint(entry, data.length);
+                    deflate(deflater, data, entry);
+                } else {
+                    entry.write(DELTA);
+                    Delta.writeVarint(entry, bestDelta.length);
+                    Delta.writeVarint(entry, offset - best.offset);
+                    deflate(deflater, bestDelta, entry);
+                }
+                entry.writeTo(out);
+                ids.add(e.id);
+                offsets.add((long) offset);
+                window.addFirst(new Base(e.type, data, offset, best == null ? 0 : best.depth + 1));
+                if (window.size() > WINDOW) {
+                    window.removeLast();
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            deflater.end();
+        }
+        finish(tmpPack, ids.size());
+
+        /** Sort ids for the index */
+        Integer[] sorted = new Integer[ids.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparing(ids::get));
+        StringBuilder names = new StringBuilder();
+        for (Integer i : sorted) {
+            names.append(ids.get(i));
+        }
+        String name = "pack-" + sha1(names.toString());
+
+        ByteArrayOutputStream idxOut = new ByteArrayOutputStream();
+        writeInt(idxOut, IDX_MAGIC);
+        writeInt(idxOut, VERSION);
+        int[] fanout = new int[256];
+        for (String id : ids) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+        }
+        int total = 0;
+        for (int b = 0; b < 256; b++) {
+            total += fanout[b];
+            writeInt(idxOut, total);
+        }
+        for (Integer i : sorted) {
+            idxOut.writeBytes(fromHex(ids.get(i)));
+        }
+        for (Integer i : sorted) {
+            writeLong(idxOut, offsets.get(i));
+        }
+
+        File pack = join(dir, name + ".pack");
+        File idxFile = join(dir, name + ".idx");
+        File tmpIdx = tempFile(dir);
+        writeContents(tmpIdx, idxOut.toByteArray());
+        Trace.count(Trace.Counter.FILES_WRITTEN);
+        Trace.count(Trace.Counter.BYTES_WRITTEN, tmpPack.length());
+        /** The index goes last: a visible .idx always has its .pack */
+        move(tmpPack, pack);
+        move(tmpIdx, idxFile);
+        written.add(idxFile);
+        return next;
+    }
+
+    /** Returns a new temporary file in DIR, unique to this writer, so that
+     *  two processes packing at once never write the same file. */
+    private static File tempFile(File dir) {
+        try {
+            return Files.createTempFile(dir.toPath(), "pack", ".tmp").toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Renames TMP into place as FILE, and fails rather than let repack
+     *  delete objects the new pack does not hold. */
+    private static void move(File tmp, File file) {
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Patches the object count COUNT into the header of pack PACK and
+     *  appends the SHA-1 trailer of its contents. */
+    private static void finish(File pack, int count) {
+        MessageDigest md = sha1Digest();
+        try (FileChannel ch = FileChannel.open(pack.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4).putInt(count).flip();
+            while (header.hasRemaining()) {
+                ch.write(header, 8 + header.position());
+            }
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+            for (long pos = 0; ch.read(buf, pos) > 0; pos += buf.position(), buf.clear()) {
+                md.update(buf.array(), 0, buf.position());
+            }
+            ByteBuffer trailer = ByteBuffer.wrap(md.digest());
+            while (trailer.hasRemaining()) {
+                ch.write(trailer, ch.size());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static void deflate(Deflater deflater, byte[] data, ByteArrayOutputStream out) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            out.write(buf, 0, n);
+        }
+    }
+
+    private static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long v) {
+        writeInt(out, (int) (v >>> 32));
+        writeInt(out, (int) v);
+    }
+
+    /* ID CONVERSION */
+
+    static byte[] fromHex(String id) {
+        byte[] raw = new byte[id.length() / 2];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = (byte) Integer.parseInt(id.substring(2 * i, 2 * i + 2), 16);
+        }
+        return raw;
+    }
+
+    static String toHex(byte[] raw) {
+        StringBuilder sb = new StringBuilder(raw.length * 2);
+        for (byte b : raw) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** Expands the path arguments of add and rm.
+ *
+ *  A pathspec is one of
+ *      .          every candidate path
+ *      DIR        every candidate path under directory DIR
+ *      PATTERN    every candidate path matching a glob such as *.txt or
+ *                 src/**.java, where * does not cross a '/' but ** does
+ *      FILE       the path itself
+ *  Paths use '/' and are relative to the working directory.
+ *
+ *  @LiZhu
+ */
+class Pathspec {
+
+    /** Returns the paths named by SPECS, sorted and without duplicates.
+     *  CANDIDATES supplies the paths that ., directories and patterns are
+     *  matched against; it is only called if one of SPECS needs it. Exits
+     *  if a directory or pattern matches nothing. */
+    static TreeSet<String> expand(List<String> specs, Supplier<Collection<String>> candidates) {
+        TreeSet<String> result = new TreeSet<>();
+        Collection<String> all = null;
+        for (String spec : specs) {
+            String p = normalize(spec);
+            boolean pattern = isPattern(p);
+            if (!p.equals(".") && !pattern && !join(CWD, p).isDirectory()) {
+                result.add(p);
+                continue;
+            }
+            if (all == null) {
+                all = candidates.get();
+            }
+            PathMatcher matcher = pattern ? FileSystems.getDefault().getPathMatcher("glob:" + p) : null;
+            boolean matched = false;
+            for (String path : all) {
+                if (p.equals(".") || (pattern ? matcher.matches(Paths.get(path)) : path.startsWith(p + "/"))) {
+                    result.add(path);
+                    matched = true;
+                }
+            }
+            if (!matched) {
+                exitWithError("File does not exist.");
+            }
+        }
+        return result;
+    }
+
+    /** Returns every plain file in the working directory and its
+     *  subdirectories, other than those in .gitlet, sorted. */
+    static List<String> workingFiles() {
+        List<String> files = new ArrayList<>();
+        Path root = CWD.toPath();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.equals(GITLET_DIR.toPath()) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(root.relativize(file).toString().replace(File.separatorChar, '/'));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static boolean isPattern(String spec) {
+        return spec.indexOf('*') >= 0 || spec.indexOf('?') >= 0 || spec.indexOf('[') >= 0;
+    }
+
+    /** Returns SPEC without a leading "./" or trailing '/'. */
+    private static String normalize(String spec) {
+        String p = spec.replace(File.separatorChar, '/');
+        while (p.startsWith("./") && p.length() > 2) {
+            p = p.substring(2);
+        }
+        while (p.endsWith("/") && p.length() > 1) {
+            p = p.substring(0, p.length() - 1);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static gitlet.Repository.HEAD;
+import static gitlet.Repository.HEADS_DIR;
+import static gitlet.Utils.*;
+
+/** Updates of branch heads and HEAD.
+ *
+ *  A branch moves only by compare-and-swap: the ref is locked, its value
+ *  checked against the one the caller based its update on, and the new
+ *  value renamed into place. Updates of different branches take different
+ *  locks and so run in parallel; a process whose update lost the race is
+ *  told so instead of overwriting the other one.
+ *
+ *  @LiZhu
+ */
+class Refs {
+
+    /** Returns the names of all local branches, sorted, leaving out the
+     *  lock files of updates in progress. */
+    static List<String> branches() {
+        List<String> branches = new ArrayList<>();
+        for (String s : plainFilenamesIn(HEADS_DIR)) {
+            if (!s.endsWith(LockFile.SUFFIX)) {
+                branches.add(s);
+            }
+        }
+        return branches;
+    }
+
+    /** Returns the commit id at the head of BRANCH, or null if there is no
+     *  such branch. */
+    static String read(String branch) {
+        File ref = join(HEADS_DIR, branch);
+        return ref.isFile() ? readContentsAsString(ref) : null;
+    }
+
+    /** Sets BRANCH to commit ID if it currently points at EXPECTED. A null
+     *  EXPECTED means the branch must not exist yet; a null ID deletes it.
+     *  Returns false, changing nothing, if the branch had another value. */
+    static boolean compareAndSet(String branch, String expected, String id) {
+        File ref = join(HEADS_DIR, branch);
+        try (LockFile lock = LockFile.acquire(ref)) {
+            if (!Objects.equals(read(branch), expected)) {
+                return false;
+            }
+            if (id == null) {
+                ref.delete();
+            } else {
+                lock.commit(id.getBytes(StandardCharsets.UTF_8));
+            }
+            return true;
+        }
+    }
+
+    /** Points HEAD at BRANCH. */
+    static void setHead(String branch) {
+        try (LockFile lock = LockFile.acquire(HEAD)) {
+            lock.commit(join("refs", "heads", branch).getPath().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -19,6 +19,20 @@ public class Repository {
     public static final File COMMIT_DIR = join(OBJECTS_DIR, "commits");
     /** Directory to store blobs */
     public static final File BLOB_DIR = join(OBJECTS_DIR, "blobs");
+    /** Directory to store trees */
+    public static final File TREE_DIR = join(OBJECTS_DIR, "trees");
+    /** Directories to store the chunks and manifests of chunked blobs */
+    public static final File CHUNK_DIR = join(OBJECTS_DIR, "chunks");
+    public static final File MANIFEST_DIR = join(OBJECTS_DIR, "manifests");
+    /** Directory to store packfiles */
+    public static final File PACK_DIR = join(OBJECTS_DIR, "pack");
+    /** Directory to store auxiliary indexes over the objects */
+    public static final File INFO_DIR = join(OBJECTS_DIR, "info");
+    /** File to store the commit-graph */
+    public static final File COMMIT_GRAPH = join(INFO_DIR, "commit-graph");
+    public static final File COMMIT_BITMAPS = join(INFO_DIR, "bitmaps");
+    /** Directory to store the columnar commit metadata index */
+    public static final File COMMIT_INDEX_DIR = join(INFO_DIR, "commit-index");
     /** Directory to store branch information */
     public static final File REFS_DIR = join(GITLET_DIR, "refs");
     public static final File HEADS_DIR = join(REFS_DIR, "heads");
@@ -28,6 +42,8 @@ public class Repository {
     public static final File HEAD = join(GITLET_DIR, "HEAD");
     /** File to store staging area */
     public static final File INDEX = join(GITLET_DIR, "index");
+    /** File to store repository settings */
+    public static final File CONFIG = join(GITLET_DIR, "config");
 
     /** Initial setup of .gitlet repository structure */
     static void createRepository() {
@@ -37,6 +53,11 @@ public class Repository {
         COMMIT_DIR.mkdir();
         OBJECTS_DIR.mkdir();
         BLOB_DIR.mkdir();
+        TREE_DIR.mkdir();
+        CHUNK_DIR.mkdir();
+        MANIFEST_DIR.mkdir();
+        PACK_DIR.mkdir();
+        INFO_DIR.mkdir();
         HEADS_DIR.mkdir();
         REMOTES_DIR.mkdir();
         try {
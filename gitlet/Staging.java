@@ -1,19 +1,192 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.Map;
 import java.util.TreeMap;
 
+import static gitlet.Utils.*;
+
 /** Represents the gitlet staging area.
+ *
+ *  Besides the staged additions and removals, the index caches the stat
+ *  data (mtime, size, inode, ctime) of every working file it has hashed, so
+ *  that a file whose stat data is unchanged need not be read and hashed
+ *  again.
  *
  *  @LiZhu
  */
 public class Staging implements Serializable {
+    /** Entries whose mtime is this close to the time they were cached are
+     *  "racy": the file may have changed again within the same timestamp
+     *  tick, so they are always rehashed. */
+    private static final long RACY_MILLIS = 1000;
+    /** Version of the binary encoding. */
+    private static final int VERSION = 1;
+    /** Fixed so that Java-serialized objects from older repositories can
+     *  still be read by migrate. */
+    private static final long serialVersionUID = 2433333161074725612L;
+
     private TreeMap<String, String> stagingAdd; // <filename, UID>
     private TreeMap<String, String> stagingRemove;
+    private TreeMap<String, StatEntry> statCache; // <filename, stat data>
+    /** True when the stat cache changed since the index was read. */
+    private transient boolean dirty;
+
+    /** The stamp of INDEX when this staging area was read or written. */
+    private transient String stamp;
+    /** The lock on INDEX, while this staging area holds it. */
+    private transient LockFile lock;
+
+    /** The index as last read or written. */
+    private static Staging loaded;
 
     public Staging() {
         this.stagingAdd = new TreeMap<>();
         this.stagingRemove = new TreeMap<>();
+        this.statCache = new TreeMap<>();
+    }
+
+    /** Returns a copy of OTHER that can be changed independently. Stat
+     *  entries are shared, as they are replaced rather than modified. */
+    private Staging(Staging other) {
+        this.stagingAdd = new TreeMap<>(other.stagingAdd);
+        this.stagingRemove = new TreeMap<>(other.stagingRemove);
+        this.statCache = new TreeMap<>(other.statCache());
+        this.stamp = other.stamp;
+    }
+
+    /** Reads a staging area from its binary encoding IN. */
+    Staging(ObjectReader in) {
+        this();
+        in.readHeader(ObjectCodec.STAGING, VERSION);
+        for (long n = in.readVarint(); n > 0; n--) {
+            stagingAdd.put(in.readString(), in.readHash());
+        }
+        for (long n = in.readVarint(); n > 0; n--) {
+            stagingRemove.put(in.readString(), in.readHash());
+        }
+        for (long n = in.readVarint(); n > 0; n--) {
+            String name = in.readString();
+            StatEntry e = new StatEntry();
+            e.mtime = in.readVarint();
+            e.ctime = in.readVarint();
+            e.size = in.readVarint();
+            e.inode = in.readVarint();
+            e.cachedAt = in.readVarint();
+            e.uid = in.readHash();
+            statCache.put(name, e);
+        }
+    }
+
+    /** Writes the binary encoding of this staging area to OUT. */
+    void write(ObjectWriter out) {
+        out.writeByte(ObjectCodec.STAGING);
+        out.writeByte(VERSION);
+        out.writeVarint(stagingAdd.size());
+        for (Map.Entry<String, String> e : stagingAdd.entrySet()) {
+            out.writeString(e.getKey());
+            out.writeHash(e.getValue());
+        }
+        out.writeVarint(stagingRemove.size());
+        for (Map.Entry<String, String> e : stagingRemove.entrySet()) {
+            out.writeString(e.getKey());
+            out.writeHash(e.getValue());
+        }
+        out.writeVarint(statCache().size());
+        for (Map.Entry<String, StatEntry> e : statCache().entrySet()) {
+            StatEntry stat = e.getValue();
+            out.writeString(e.getKey());
+            out.writeVarint(stat.mtime);
+            out.writeVarint(stat.ctime);
+            out.writeVarint(stat.size);
+            out.writeVarint(stat.inode);
+            out.writeVarint(stat.cachedAt);
+            out.writeHash(stat.uid);
+        }
+    }
+
+    /** Returns the staging area stored in INDEX, for reading only. The
+     *  decoded index is kept between calls and reused while INDEX is the
+     *  same file with the same mtime and size, so a daemon decodes it only
+     *  after another process changed it. */
+    public static Staging load() {
+        return Trace.timed("index-load", Staging::loadCached);
+    }
+
+    private static Staging loadCached() {
+        String stamp = stamp();
+        if (loaded == null || !stamp.equals(loaded.stamp)) {
+            loaded = ObjectCodec.decode(readContents(Repository.INDEX), Staging.class);
+            loaded.stamp = stamp;
+        }
+        return new Staging(loaded);
+    }
+
+    /** Returns the staging area stored in INDEX, locking it against other
+     *  processes until save is called or the command ends. */
+    public static Staging lock() {
+        LockFile lock = LockFile.acquire(Repository.INDEX);
+        Staging sa = load();
+        sa.lock = lock;
+        return sa;
+    }
+
+    /** Releases the lock taken by lock without saving. */
+    public void unlock() {
+        if (lock != null) {
+            lock.close();
+            lock = null;
+        }
+    }
+
+    /** Stores this staging area in INDEX, by writing it to the lock file
+     *  and renaming that into place. Takes the lock if this staging area
+     *  was not loaded with lock. */
+    public void save() {
+        Trace.timed("index-save", this::writeIndex);
+    }
+
+    private void writeIndex() {
+        if (lock == null) {
+            lock = LockFile.acquire(Repository.INDEX);
+        }
+        lock.commit(ObjectCodec.encode(this));
+        lock = null;
+        stamp = stamp();
+        loaded = new Staging(this);
+    }
+
+    /** Stores this staging area, which was loaded for reading, unless INDEX
+     *  changed since or another process holds its lock. Used to keep
+     *  refreshed stat data, which is only an optimization. */
+    public void saveIfUnchanged() {
+        lock = LockFile.tryAcquire(Repository.INDEX);
+        if (lock == null) {
+            return;
+        }
+        if (!stamp().equals(stamp)) {
+            unlock();
+            return;
+        }
+        save();
+    }
+
+    /** Returns a string that changes whenever INDEX is replaced or
+     *  modified: its file key (the inode, where there is one), mtime and
+     *  size. */
+    private static String stamp() {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(Repository.INDEX.toPath(), BasicFileAttributes.class);
+            return attrs.fileKey() + ":" + attrs.lastModifiedTime().toMillis() + ":" + attrs.size();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
     public void clearStage(){
@@ -28,4 +201,93 @@ public class Staging implements Serializable {
     public TreeMap<String, String> getStagingRemove() {
         return stagingRemove;
     }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /** Returns the blob UID of working FILE named FILENAME, hashing its
+     *  contents only if its stat data does not match the cached entry. */
+    public String cachedUID(String filename, File file) {
+        StatEntry stat = lookup(filename, file);
+        record(filename, stat);
+        return stat.uid;
+    }
+
+    /** Returns the stat data of FILE with its blob UID filled in, taken from
+     *  the cache when the stat data matches and hashed otherwise. Does not
+     *  modify the index, so it may run on several threads at once. */
+    StatEntry lookup(String filename, File file) {
+        StatEntry stat = StatEntry.of(file);
+        StatEntry cached = statCache == null ? null : statCache.get(filename);
+        if (cached != null && cached.matches(stat)) {
+            return cached;
+        }
+        stat.uid = Blob.hash(file);
+        stat.cachedAt = System.currentTimeMillis();
+        return stat;
+    }
+
+    /** Stores STAT, as returned by lookup, as the entry for FILENAME. */
+    void record(String filename, StatEntry stat) {
+        if (statCache().put(filename, stat) != stat) {
+            dirty = true;
+        }
+    }
+
+    /** Drops cached entries for files not in FILENAMES. */
+    public void pruneStatCache(Collection<String> filenames) {
+        if (statCache().keySet().retainAll(filenames)) {
+            dirty = true;
+        }
+    }
+
+    private Map<String, StatEntry> statCache() {
+        if (statCache == null) {
+            statCache = new TreeMap<>();
+        }
+        return statCache;
+    }
+
+    /** Stat data of a working file, as recorded in the index. */
+    static class StatEntry implements Serializable {
+        private static final long serialVersionUID = 1840327739292752108L;
+        private long mtime;
+        private long ctime;
+        private long size;
+        private long inode;
+        private long cachedAt;
+        private String uid;
+
+        /** Reads the stat data of FILE. The inode and ctime are only
+         *  available on file systems with unix attributes. */
+        static StatEntry of(File file) {
+            StatEntry e = new StatEntry();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                e.mtime = attrs.lastModifiedTime().toMillis();
+                e.size = attrs.size();
+                try {
+                    Map<String, Object> unix = Files.readAttributes(file.toPath(), "unix:ino,ctime");
+                    e.inode = ((Number) unix.get("ino")).longValue();
+                    e.ctime = ((FileTime) unix.get("ctime")).toMillis();
+                } catch (UnsupportedOperationException | IllegalArgumentException excp) {
+                    e.ctime = e.mtime;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return e;
+        }
+
+        String getUID() {
+            return uid;
+        }
+
+        boolean matches(StatEntry other) {
+            return mtime == other.mtime && ctime == other.ctime
+                    && size == other.size && inode == other.inode
+                    && cachedAt - mtime >= RACY_MILLIS;
+        }
+    }
 }
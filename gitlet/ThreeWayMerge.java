@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Line-level three-way merge of two versions of a file with the version
+ *  they share, in the manner of diff3.
+ *
+ *  The edit scripts from the base to each side are read in step, as Diff
+ *  streams them. A base line kept by both sides is stable and is written
+ *  out at once. Between stable lines, each side's lines form a chunk: if
+ *  only one side changed the chunk, or both changed it the same way, that
+ *  side's lines are taken; otherwise both are written between conflict
+ *  markers. Only the line positions of the current chunk are held in
+ *  memory; the texts themselves are mapped and copied line by line.
+ *
+ *  @LiZhu
+ */
+class ThreeWayMerge {
+
+    /** One side of the merge: its edit script from the base, the next op
+     *  of that script, and the chunk being collected. */
+    private static class Side {
+        private final Diff.Text text;
+        private final Diff script;
+        private int op;
+        /** Base lines passed by the script. */
+        private int base;
+        /** Positions of this side's lines in the chunk, and whether the
+         *  chunk differs from the base. */
+        private int[] lines = new int[64];
+        private int count;
+        private boolean changed;
+
+        Side(Diff.Text base, Diff.Text text) {
+            this.text = text;
+            this.script = new Diff(base, text);
+            this.op = script.next();
+        }
+
+        /** Moves past the next op without recording it. */
+        void skip() {
+            base++;
+            op = script.next();
+        }
+
+        /** Adds the next op to the chunk. */
+        void take() {
+            if (op != Diff.INSERT) {
+                base++;
+            }
+            if (op != Diff.DELETE) {
+                if (count == lines.length) {
+                    lines = Arrays.copyOf(lines, count * 2);
+                }
+                lines[count++] = script.opB();
+            }
+            changed |= op != Diff.EQUAL;
+            op = script.next();
+        }
+
+        /** Adds ops to the chunk until it covers the base up to line END and
+         *  the next op keeps a base line. */
+        void fill(int end) {
+            while ((base < end && op != Diff.END) || op == Diff.DELETE || op == Diff.INSERT) {
+                take();
+            }
+        }
+
+        void clear() {
+            count = 0;
+            changed = false;
+        }
+
+        boolean sameAs(Side other) {
+            if (count != other.count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (!text.sameLine(lines[i], other.text, other.lines[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void write(OutputStream out, boolean terminate) throws IOException {
+            for (int i = 0; i < count; i++) {
+                text.copyLine(lines[i], out, terminate);
+            }
+        }
+    }
+
+    /** Writes the merge of blobs OURS and THEIRS, which both changed blob
+     *  BASE (null if the file is new on both sides), to FILE. Returns true
+     *  if it has conflicts. Binary files conflict as a whole. */
+    static boolean merge(String base, String ours, String theirs, File file) {
+        return merge(Diff.Text.blob(base), Diff.Text.blob(ours), Diff.Text.blob(theirs), file);
+    }
+
+    /** Writes the merge of texts O and T, which both changed text B, to
+     *  FILE, and returns true if it has conflicts. */
+    static boolean merge(Diff.Text b, Diff.Text o, Diff.Text t, File file) {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            if (b.isBinary() || o.isBinary() || t.isBinary()) {
+                print(out, "<<<<<<< HEAD\n");
+                o.copyTo(out);
+                print(out, "=======\n");
+                t.copyTo(out);
+                print(out, ">>>>>>>\n");
+                return true;
+            }
+            return merge(new Side(b, o), new Side(b.copy(), t), out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    private static boolean merge(Side o, Side t, OutputStream out) throws IOException {
+        boolean conflict = false;
+        while (o.op != Diff.END || t.op != Diff.END) {
+            if (o.op == Diff.EQUAL && t.op == Diff.EQUAL) {
+                o.text.copyLine(o.script.opB(), out, false);
+                o.skip();
+                t.skip();
+                continue;
+            }
+            /** Grow the chunk until both sides are back on the same base line */
+            o.clear();
+            t.clear();
+            int end = o.base;
+            while (true) {
+                o.fill(end);
+                t.fill(end);
+                if (o.base == t.base) {
+                    break;
+                }
+                end = Math.max(o.base, t.base);
+            }
+            if (!o.changed) {
+                t.write(out, false);
+            } else if (!t.changed || o.sameAs(t)) {
+                o.write(out, false);
+            } else {
+                conflict = true;
+                print(out, "<<<<<<< HEAD\n");
+                o.write(out, true);
+                print(out, "=======\n");
+                t.write(out, true);
+                print(out, ">>>>>>>\n");
+            }
+        }
+        return conflict;
+    }
+
+    private static void print(OutputStream out, String s) throws IOException {
+        out.write(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
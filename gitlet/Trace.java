@@ -0,0 +1,296 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Repository.GITLET_DIR;
+import static gitlet.Utils.*;
+
+/** Counts what a command does and how long its phases take.
+ *
+ *  The I/O paths count themselves as they go: Utils' readers and writers,
+ *  the streaming copies in Compression, hashing, mapped files, packs, the
+ *  object cache and directory listings. Commands need no code of their
+ *  own. Phases are named spans, such as loading the index or scanning the
+ *  working tree, timed only while tracing.
+ *
+ *  "gitlet --trace CMD ..." or GITLET_TRACE=1 prints a JSON report of the
+ *  command to stderr when it ends; "--trace=FILE" or GITLET_TRACE=FILE
+ *  appends it to FILE instead, one line per command. Through the daemon
+ *  the report follows the command's output. With the metrics setting
+ *  naming a file ("gitlet config metrics .gitlet/metrics.prom"), every
+ *  command also adds its counts to the totals in that file, written in
+ *  the Prometheus text format so that it can be scraped.
+ *
+ *  @LiZhu
+ */
+class Trace {
+
+    enum Counter {
+        OBJECTS_DECODED("objectsDecoded"),
+        OBJECTS_ENCODED("objectsEncoded"),
+        CACHE_HITS("cacheHits"),
+        CACHE_MISSES("cacheMisses"),
+        PACKED_READS("packedReads"),
+        FILES_READ("filesRead"),
+        BYTES_READ("bytesRead"),
+        FILES_WRITTEN("filesWritten"),
+        BYTES_WRITTEN("bytesWritten"),
+        BYTES_MAPPED("bytesMapped"),
+        FILES_HASHED("filesHashed"),
+        BYTES_HASHED("bytesHashed"),
+        DIRECTORY_LISTINGS("directoryListings");
+
+        final String json;
+
+        Counter(String json) {
+            this.json = json;
+        }
+    }
+
+    private static final LongAdder[] COUNTS = new LongAdder[Counter.values().length];
+    static {
+        for (int i = 0; i < COUNTS.length; i++) {
+            COUNTS[i] = new LongAdder();
+        }
+    }
+
+    /** Total nanoseconds and number of spans of each phase of the current
+     *  command, in the order they first ran; guarded by itself. */
+    private static final Map<String, long[]> phases = new LinkedHashMap<>();
+    private static volatile boolean tracing;
+    /** Where the report goes: null for stderr, else a file. */
+    private static File destination;
+    private static long start;
+    private static String error;
+    /** Whether startup has been accounted for: only the first command of
+     *  a process that is not a daemon reports it. */
+    private static boolean started;
+
+    static void count(Counter c) {
+        COUNTS[c.ordinal()].increment();
+    }
+
+    static void count(Counter c, long n) {
+        COUNTS[c.ordinal()].add(n);
+    }
+
+    /** Runs BODY as a span of phase NAME and returns its result. */
+    static <T> T timed(String name, Supplier<T> body) {
+        if (!tracing) {
+            return body.get();
+        }
+        long begin = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            record(name, System.nanoTime() - begin);
+        }
+    }
+
+    /** Runs BODY as a span of phase NAME. */
+    static void timed(String name, Runnable body) {
+        timed(name, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    private static void record(String name, long nanos) {
+        synchronized (phases) {
+            long[] p = phases.computeIfAbsent(name, k -> new long[2]);
+            p[0] += nanos;
+            p[1]++;
+        }
+    }
+
+    /** Starts counting for the command in ARGS and returns ARGS without a
+     *  leading --trace option. */
+    static String[] begin(String[] args) {
+        for (LongAdder a : COUNTS) {
+            a.reset();
+        }
+        synchronized (phases) {
+            phases.clear();
+        }
+        error = null;
+        String option = option(System.getenv("GITLET_TRACE"));
+        if (args.length > 0 && (args[0].equals("--trace") || args[0].startsWith("--trace="))) {
+            option = args[0];
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        tracing = option != null;
+        destination = tracing && option.length() > "--trace=".length() ? new File(option.substring(8)) : null;
+        if (tracing && !started) {
+            /** Time spent before main, in JVM startup and class loading */
+            long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+            record("startup", Math.max(0, System.currentTimeMillis() - jvmStart) * 1000000);
+        }
+        started = true;
+        start = System.nanoTime();
+        return args;
+    }
+
+    /** Notes that this process is a daemon, whose commands do not pay for
+     *  the JVM's startup. */
+    static void serving() {
+        started = true;
+    }
+
+    /** Returns the --trace option equivalent to GITLET_TRACE being ENV, or
+     *  null if ENV does not turn tracing on. */
+    static String option(String env) {
+        if (env == null || env.isEmpty() || env.equals("0") || env.equalsIgnoreCase("false")) {
+            return null;
+        }
+        if (env.equals("1") || env.equals("2") || env.equalsIgnoreCase("true")) {
+            return "--trace";
+        }
+        return "--trace=" + new File(env).getAbsolutePath();
+    }
+
+    /** Notes that the command failed with MESSAGE. */
+    static void fail(String message) {
+        error = message;
+    }
+
+    /** Ends the command ARGS: writes its report if tracing and adds its
+     *  counts to the metrics file if one is set. */
+    static void end(String[] args) {
+        long nanos = System.nanoTime() - start;
+        long[] counts = new long[COUNTS.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = COUNTS[i].sum();
+        }
+        Map<String, long[]> spans;
+        synchronized (phases) {
+            spans = new LinkedHashMap<>(phases);
+        }
+        String command = args.length == 0 ? "" : args[0];
+        if (tracing) {
+            report(args, nanos, spans, counts);
+        }
+        String metrics = GITLET_DIR.isDirectory() ? Config.get("metrics", null) : null;
+        if (metrics != null && !command.isEmpty()) {
+            File f = new File(metrics);
+            updateMetrics(f.isAbsolute() ? f : join(CWD, metrics), command, nanos, spans, counts);
+        }
+    }
+
+    private static void report(String[] args, long nanos, Map<String, long[]> spans, long[] counts) {
+        StringBuilder s = new StringBuilder("{\"command\":");
+        s.append(quote(args.length == 0 ? "" : args[0])).append(",\"args\":[");
+        for (int i = 1; i < args.length; i++) {
+            s.append(i > 1 ? "," : "").append(quote(args[i]));
+        }
+        s.append("],\"ms\":").append(millis(nanos));
+        if (error != null) {
+            s.append(",\"error\":").append(quote(error));
+        }
+        s.append(",\"phases\":{");
+        String sep = "";
+        for (Map.Entry<String, long[]> e : spans.entrySet()) {
+            s.append(sep).append(quote(e.getKey())).append(":{\"ms\":").append(millis(e.getValue()[0]))
+                .append(",\"count\":").append(e.getValue()[1]).append('}');
+            sep = ",";
+        }
+        s.append("},\"counters\":{");
+        for (Counter c : Counter.values()) {
+            s.append(c.ordinal() > 0 ? "," : "").append('"').append(c.json).append("\":").append(counts[c.ordinal()]);
+        }
+        s.append("}}\n");
+        if (destination == null) {
+            System.err.print(s);
+            System.err.flush();
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(destination, true)) {
+            out.write(s.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            System.err.println("gitlet: cannot write trace to " + destination + ": " + excp.getMessage());
+        }
+    }
+
+    /** Adds the counts of one run of COMMAND to the totals in metrics file
+     *  FILE, under its lock. Metrics are best effort: if the lock cannot
+     *  be had, the run is left out. */
+    private static void updateMetrics(File file, String command, long nanos, Map<String, long[]> spans,
+                                      long[] counts) {
+        LockFile lock;
+        try {
+            lock = LockFile.acquire(file);
+        } catch (GitletException excp) {
+            return;
+        }
+        try (lock) {
+            TreeMap<String, Double> totals = new TreeMap<>();
+            if (file.isFile()) {
+                for (String line : readContentsAsString(file).split("\n")) {
+                    int space = line.lastIndexOf(' ');
+                    if (!line.startsWith("#") && space > 0) {
+                        totals.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+                    }
+                }
+            }
+            String label = "{command=" + quote(command) + "}";
+            totals.merge("gitlet_commands_total" + label, 1.0, Double::sum);
+            totals.merge("gitlet_command_seconds_total" + label, nanos / 1e9, Double::sum);
+            if (error != null) {
+                totals.merge("gitlet_command_errors_total" + label, 1.0, Double::sum);
+            }
+            for (Map.Entry<String, long[]> e : spans.entrySet()) {
+                totals.merge("gitlet_phase_seconds_total{phase=" + quote(e.getKey()) + "}",
+                    e.getValue()[0] / 1e9, Double::sum);
+            }
+            for (Counter c : Counter.values()) {
+                totals.merge("gitlet_" + c.name().toLowerCase(Locale.ROOT) + "_total",
+                    (double) counts[c.ordinal()], Double::sum);
+            }
+            StringBuilder s = new StringBuilder();
+            String family = null;
+            for (Map.Entry<String, Double> e : totals.entrySet()) {
+                String name = e.getKey().split("\\{", 2)[0];
+                if (!name.equals(family)) {
+                    family = name;
+                    s.append("# TYPE ").append(name).append(" counter\n");
+                }
+                double v = e.getValue();
+                s.append(e.getKey()).append(' ')
+                    .append(v == Math.rint(v) ? String.valueOf((long) v) : String.format(Locale.ROOT, "%.6f", v))
+                    .append('\n');
+            }
+            lock.commit(s.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /** Returns S as a JSON string literal. */
+    private static String quote(String s) {
+        StringBuilder q = new StringBuilder("\"");
+        for (char ch : s.toCharArray()) {
+            if (ch == '"' || ch == '\\') {
+                q.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                q.append(String.format("\\u%04x", (int) ch));
+            } else {
+                q.append(ch);
+            }
+        }
+        return q.append('"').toString();
+    }
+}
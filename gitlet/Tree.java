@@ -0,0 +1,209 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.sha1;
+
+/** Represents a gitlet tree object: the contents of one directory.
+ *
+ *  A tree maps file names to blob UIDs and subdirectory names to tree UIDs.
+ *  Its UID is the hash of its entries, so a directory that did not change
+ *  between two commits is the same object in both, and comparing two trees
+ *  can skip any pair of subtrees with equal UIDs.
+ *
+ *  @LiZhu
+ */
+public class Tree implements Serializable, Dumpable {
+    /** Version of the binary encoding. */
+    private static final int VERSION = 1;
+    /** Fixed so that Java-serialized objects from older repositories can
+     *  still be read by migrate. */
+    private static final long serialVersionUID = -3413600853638102944L;
+
+    /** UID of the tree with no entries, which is never stored. */
+    public static final String EMPTY_UID = sha1("tree\n");
+
+    private TreeMap<String, String> files; // <filename, blob UID>
+    private TreeMap<String, String> trees; // <directory name, tree UID>
+
+    public Tree() {
+        this.files = new TreeMap<>();
+        this.trees = new TreeMap<>();
+    }
+
+    private Tree(Tree other) {
+        this.files = new TreeMap<>(other.files);
+        this.trees = new TreeMap<>(other.trees);
+    }
+
+    /** Reads a tree from its binary encoding IN. */
+    Tree(ObjectReader in) {
+        in.readHeader(ObjectCodec.TREE, VERSION);
+        this.files = new TreeMap<>();
+        this.trees = new TreeMap<>();
+        for (long n = in.readVarint(); n > 0; n--) {
+            files.put(in.readString(), in.readHash());
+        }
+        for (long n = in.readVarint(); n > 0; n--) {
+            trees.put(in.readString(), in.readHash());
+        }
+    }
+
+    /** Writes the binary encoding of this tree to OUT. */
+    void write(ObjectWriter out) {
+        out.writeByte(ObjectCodec.TREE);
+        out.writeByte(VERSION);
+        out.writeVarint(files.size());
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            out.writeString(e.getKey());
+            out.writeHash(e.getValue());
+        }
+        out.writeVarint(trees.size());
+        for (Map.Entry<String, String> e : trees.entrySet()) {
+            out.writeString(e.getKey());
+            out.writeHash(e.getValue());
+        }
+    }
+
+    public String getUID() {
+        StringBuilder sb = new StringBuilder("tree\n");
+        for (Map.Entry<String, String> e : files.entrySet()) {
+            sb.append("blob ").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        for (Map.Entry<String, String> e : trees.entrySet()) {
+            sb.append("tree ").append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        return sha1(sb.toString());
+    }
+
+    public TreeMap<String, String> getFiles() {
+        return files;
+    }
+
+    public TreeMap<String, String> getTrees() {
+        return trees;
+    }
+
+    /** Stores this tree unless an identical one exists, and returns its UID. */
+    public String store() {
+        String uid = getUID();
+        if (!uid.equals(EMPTY_UID) && !ObjectStore.contains(ObjectStore.TREE, uid)) {
+            ObjectStore.writeObject(ObjectStore.TREE, uid, this);
+        }
+        return uid;
+    }
+
+    public static Tree read(String treeID) {
+        if (treeID.equals(EMPTY_UID)) {
+            return new Tree();
+        }
+        return ObjectStore.readObject(ObjectStore.TREE, treeID, Tree.class);
+    }
+
+    /** Returns the UID of the tree TREEID with the blobs in ADDS put at
+     *  their paths and the paths in REMOVES deleted. Only the trees along
+     *  changed paths are rewritten; all other subtrees are shared. */
+    public static String update(String treeID, Map<String, String> adds, Iterable<String> removes) {
+        Tree tree = new Tree(read(treeID));
+        Map<String, Map<String, String>> subAdds = new HashMap<>();
+        Map<String, TreeSet<String>> subRemoves = new HashMap<>();
+        for (Map.Entry<String, String> e : adds.entrySet()) {
+            String path = e.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree.files.put(path, e.getValue());
+            } else {
+                subAdds.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), e.getValue());
+            }
+        }
+        for (String path : removes) {
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                tree.files.remove(path);
+            } else {
+                subRemoves.computeIfAbsent(path.substring(0, slash), k -> new TreeSet<>())
+                        .add(path.substring(slash + 1));
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(subAdds.keySet());
+        dirs.addAll(subRemoves.keySet());
+        for (String dir : dirs) {
+            String child = update(tree.trees.getOrDefault(dir, EMPTY_UID),
+                    subAdds.getOrDefault(dir, new TreeMap<>()),
+                    subRemoves.getOrDefault(dir, new TreeSet<>()));
+            if (child.equals(EMPTY_UID)) {
+                tree.trees.remove(dir);
+            } else {
+                tree.trees.put(dir, child);
+            }
+        }
+        return tree.store();
+    }
+
+    /** Returns every file under tree TREEID, mapped from its path to its
+     *  blob UID. */
+    public static TreeMap<String, String> flatten(String treeID) {
+        TreeMap<String, String> result = new TreeMap<>();
+        flatten(treeID, "", result);
+        return result;
+    }
+
+    private static void flatten(String treeID, String prefix, TreeMap<String, String> result) {
+        Tree tree = read(treeID);
+        for (Map.Entry<String, String> e : tree.files.entrySet()) {
+            result.put(prefix + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : tree.trees.entrySet()) {
+            flatten(e.getValue(), prefix + e.getKey() + "/", result);
+        }
+    }
+
+    /** Receives the differences found by diff. */
+    public interface Visitor {
+        /** The file at PATH is OLDBLOB in the first tree and NEWBLOB in the
+         *  second; either is null where the file is absent. */
+        void changed(String path, String oldBlob, String newBlob);
+    }
+
+    /** Reports every file that differs between trees FROM and TO to VISITOR,
+     *  without descending into subtrees that are identical in both. */
+    public static void diff(String from, String to, Visitor visitor) {
+        diff(from, to, "", visitor);
+    }
+
+    private static void diff(String from, String to, String prefix, Visitor visitor) {
+        if (from.equals(to)) {
+            return;
+        }
+        Tree a = read(from);
+        Tree b = read(to);
+        TreeSet<String> names = new TreeSet<>(a.files.keySet());
+        names.addAll(b.files.keySet());
+        for (String name : names) {
+            String oldBlob = a.files.get(name);
+            String newBlob = b.files.get(name);
+            if (!Objects.equals(oldBlob, newBlob)) {
+                visitor.changed(prefix + name, oldBlob, newBlob);
+            }
+        }
+        TreeSet<String> dirs = new TreeSet<>(a.trees.keySet());
+        dirs.addAll(b.trees.keySet());
+        for (String dir : dirs) {
+            diff(a.trees.getOrDefault(dir, EMPTY_UID), b.trees.getOrDefault(dir, EMPTY_UID),
+                    prefix + dir + "/", visitor);
+        }
+    }
+
+    @Override
+    public void dump() {
+        System.out.println("hash: " + getUID());
+        System.out.println("files: " + files);
+        System.out.println("trees: " + trees);
+    }
+}
@@ -0,0 +1,74 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+
+import static gitlet.Repository.CWD;
+import static gitlet.Utils.join;
+
+/** Hashes working files on a ForkJoinPool.
+ *
+ *  The number of workers defaults to the number of processors and may be
+ *  set with the gitlet.threads system property or the GITLET_THREADS
+ *  environment variable. Small trees are scanned on the calling thread.
+ *
+ *  @LiZhu
+ */
+class TreeScanner {
+
+    /** Trees with fewer files than this are hashed serially. */
+    static final int SERIAL_THRESHOLD = 64;
+
+    /** Returns the number of worker threads to hash with. */
+    static int parallelism() {
+        String n = System.getProperty("gitlet.threads", System.getenv("GITLET_THREADS"));
+        if (n != null) {
+            try {
+                return Math.max(1, Integer.parseInt(n.trim()));
+            } catch (NumberFormatException excp) {
+                throw new IllegalArgumentException("bad thread count: " + n);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /** Finds the blob UID of each of FILENAMES in the working directory,
+     *  using the stat cache of SA, and passes each name and UID to CONSUMER
+     *  in the order of FILENAMES as soon as it is available. Refreshed stat
+     *  data is recorded in SA once the scan is complete. */
+    static void scan(List<String> filenames, Staging sa, BiConsumer<String, String> consumer) {
+        Trace.timed("worktree-scan", () -> scanFiles(filenames, sa, consumer));
+    }
+
+    private static void scanFiles(List<String> filenames, Staging sa, BiConsumer<String, String> consumer) {
+        int threads = parallelism();
+        if (threads == 1 || filenames.size() < SERIAL_THRESHOLD) {
+            for (String s : filenames) {
+                consumer.accept(s, sa.cachedUID(s, join(CWD, s)));
+            }
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<Staging.StatEntry>> tasks = new ArrayList<>(filenames.size());
+            for (String s : filenames) {
+                tasks.add(pool.submit(() -> sa.lookup(s, join(CWD, s))));
+            }
+            List<Staging.StatEntry> results = new ArrayList<>(filenames.size());
+            for (int i = 0; i < filenames.size(); i++) {
+                Staging.StatEntry stat = tasks.get(i).join();
+                results.add(stat);
+                consumer.accept(filenames.get(i), stat.getUID());
+            }
+            /** Workers read the cache, so it is only updated afterwards */
+            for (int i = 0; i < filenames.size(); i++) {
+                sa.record(filenames.get(i), results.get(i));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}